@@ -0,0 +1,71 @@
+package com.powerinnovations.batteryoptimizer.benchmark;
+
+import com.powerinnovations.batteryoptimizer.service.ExportFormat;
+import com.powerinnovations.batteryoptimizer.service.PackUtils;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures exporting the results in each ExportFormat. Loading is measured by LoadBenchmark, which
+ * does not depend on the format.
+ *
+ * @author robbi.mount
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IoBenchmark {
+
+    @Param({"100", "5000"})
+    private int packCount;
+
+    @Param({"4", "12"})
+    private int cellsPerPack;
+
+    @Param({LotGenerator.GENERATED, LotGenerator.SAMPLE})
+    private String source;
+
+    @Param({"XLSX", "XLS", "CSV", "JSON"})
+    private ExportFormat format;
+
+    private File csvFile;
+    private File exportFile;
+    private PackUtils loaded;
+
+    @Setup
+    public void setUp() throws IOException {
+        csvFile = LotGenerator.writeCsv(LotGenerator.impedances(source, packCount * cellsPerPack));
+        exportFile = File.createTempFile("benchmark-export", "." + format.getExtension());
+        exportFile.deleteOnExit();
+        loaded = new PackUtils(new NullView());
+        loaded.loadPackListFromCsv(csvFile, cellsPerPack);
+    }
+
+    @TearDown
+    public void tearDown() {
+        csvFile.delete();
+        exportFile.delete();
+    }
+
+    @Benchmark
+    public long export() throws IOException {
+        loaded.export(exportFile, format, null);
+        return exportFile.length();
+    }
+}
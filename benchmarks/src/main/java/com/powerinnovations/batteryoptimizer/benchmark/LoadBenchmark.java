@@ -0,0 +1,62 @@
+package com.powerinnovations.batteryoptimizer.benchmark;
+
+import com.powerinnovations.batteryoptimizer.model.Pack;
+import com.powerinnovations.batteryoptimizer.service.PackUtils;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures loading a lot from CSV.
+ *
+ * @author robbi.mount
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoadBenchmark {
+
+    @Param({"100", "5000"})
+    private int packCount;
+
+    @Param({"4", "12"})
+    private int cellsPerPack;
+
+    @Param({LotGenerator.GENERATED, LotGenerator.SAMPLE})
+    private String source;
+
+    private File csvFile;
+
+    @Setup
+    public void setUp() throws IOException {
+        csvFile = LotGenerator.writeCsv(LotGenerator.impedances(source, packCount * cellsPerPack));
+    }
+
+    @TearDown
+    public void tearDown() {
+        csvFile.delete();
+    }
+
+    @Benchmark
+    public List<Pack> loadPackListFromCsv() throws IOException {
+        PackUtils packUtils = new PackUtils(new NullView());
+        packUtils.loadPackListFromCsv(csvFile, cellsPerPack);
+        return packUtils.getPackList();
+    }
+}
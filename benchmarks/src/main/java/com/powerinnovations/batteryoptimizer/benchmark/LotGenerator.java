@@ -0,0 +1,128 @@
+package com.powerinnovations.batteryoptimizer.benchmark;
+
+import com.powerinnovations.batteryoptimizer.model.Cell;
+import com.powerinnovations.batteryoptimizer.model.Pack;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Builds the lots the benchmarks run on. A lot is either generated, with normally distributed
+ * impedances, or built from SampleStartData.csv, whose impedances are repeated as often as needed
+ * to reach the requested size. Both are seeded, so every run measures the same data.
+ *
+ * The sample file is looked up from the batteryoptimizer.sample system property, then in the
+ * working directory and its parent.
+ *
+ * @author robbi.mount
+ */
+final class LotGenerator {
+
+    static final String GENERATED = "generated";
+    static final String SAMPLE = "sample";
+
+    private static final long SEED = 20160601L;
+    private static final double MEAN_IMPEDANCE = 0.0007; //Ohms, close to the sample data.
+    private static final double IMPEDANCE_DEVIATION = 0.00004;
+
+    private LotGenerator() {
+    }
+
+    /**
+     * Returns the impedances of a lot in their unsorted, as-measured order.
+     *
+     * @param source GENERATED or SAMPLE.
+     * @param count the number of cells.
+     * @return the cell impedances.
+     * @throws IOException thrown if the sample file cannot be read.
+     */
+    static double[] impedances(String source, int count) throws IOException {
+        double[] impedances = new double[count];
+        if (GENERATED.equals(source)) {
+            Random random = new Random(SEED);
+            for (int i = 0; i < count; i++) {
+                impedances[i] = MEAN_IMPEDANCE + random.nextGaussian() * IMPEDANCE_DEVIATION;
+            }
+        } else if (SAMPLE.equals(source)) {
+            double[] sample = readSample();
+            for (int i = 0; i < count; i++) {
+                impedances[i] = sample[i % sample.length];
+            }
+        } else {
+            throw new IllegalArgumentException("Unknown lot source " + source);
+        }
+        return impedances;
+    }
+
+    /**
+     * Cuts a lot into packs of consecutive cells, as an unoptimized starting arrangement.
+     *
+     * @param impedances the cell impedances.
+     * @param cellsPerPack the number of cells per pack.
+     * @return a new list of Pack objects.
+     */
+    static List<Pack> packs(double[] impedances, int cellsPerPack) {
+        List<Pack> packs = new ArrayList<>(impedances.length / cellsPerPack);
+        for (int p = 0; p < impedances.length / cellsPerPack; p++) {
+            Pack pack = new Pack(Integer.toString(p));
+            for (int c = p * cellsPerPack; c < (p + 1) * cellsPerPack; c++) {
+                pack.addCell(new Cell(Integer.toString(c + 1), impedances[c]));
+            }
+            packs.add(pack);
+        }
+        return packs;
+    }
+
+    /**
+     * Writes a lot to a temporary CSV file in the format of SampleStartData.csv.
+     *
+     * @param impedances the cell impedances.
+     * @return the new file, deleted when the JVM exits.
+     * @throws IOException thrown in the event of an IO error.
+     */
+    static File writeCsv(double[] impedances) throws IOException {
+        File file = File.createTempFile("benchmark-lot", ".csv");
+        file.deleteOnExit();
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8))) {
+            out.println("cell_ID,cell_value");
+            for (int i = 0; i < impedances.length; i++) {
+                out.println((i + 1) + "," + impedances[i]);
+            }
+        }
+        return file;
+    }
+
+    private static double[] readSample() throws IOException {
+        File file = findSample();
+        List<Double> values = new ArrayList<>();
+        try (BufferedReader in = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            in.readLine(); //Skip the header.
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    values.add(Double.parseDouble(line.substring(line.indexOf(',') + 1)));
+                }
+            }
+        }
+        return values.stream().mapToDouble(Double::doubleValue).toArray();
+    }
+
+    private static File findSample() throws IOException {
+        String property = System.getProperty("batteryoptimizer.sample");
+        File[] candidates = property != null
+                ? new File[]{new File(property)}
+                : new File[]{new File("SampleStartData.csv"), new File("../SampleStartData.csv")};
+        for (File candidate : candidates) {
+            if (candidate.isFile()) {
+                return candidate;
+            }
+        }
+        throw new IOException("SampleStartData.csv not found; set -Dbatteryoptimizer.sample=<path>.");
+    }
+}
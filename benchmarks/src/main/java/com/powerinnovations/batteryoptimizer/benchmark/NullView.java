@@ -0,0 +1,21 @@
+package com.powerinnovations.batteryoptimizer.benchmark;
+
+import com.powerinnovations.batteryoptimizer.model.Pack;
+import com.powerinnovations.batteryoptimizer.view.OptimizerView;
+import java.util.List;
+
+/**
+ * An OptimizerView that discards every update, so that only the work of PackUtils is measured.
+ *
+ * @author robbi.mount
+ */
+final class NullView implements OptimizerView {
+
+    @Override
+    public void updateDisplay(List<Pack> packList) {
+    }
+
+    @Override
+    public void optimizationComplete(List<Pack> packList) {
+    }
+}
@@ -0,0 +1,75 @@
+package com.powerinnovations.batteryoptimizer.benchmark;
+
+import com.powerinnovations.batteryoptimizer.service.AnnealingSchedule;
+import com.powerinnovations.batteryoptimizer.service.LotOptimizer;
+import com.powerinnovations.batteryoptimizer.service.Move;
+import com.powerinnovations.batteryoptimizer.service.OptimizationMode;
+import com.powerinnovations.batteryoptimizer.service.SeededRandom;
+import com.powerinnovations.batteryoptimizer.service.StandardObjective;
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures a single optimizer iteration in each mode. The optimizer keeps running across
+ * invocations, so after warm-up the figure is that of a search well past its first, easy
+ * improvements. The objective defaults to that of the mode; pass, for example,
+ * -p objective=SUM_OF_SQUARES to measure another StandardObjective. The moves are either every
+ * kind, chosen adaptively, or single swaps only; -p moves=REPARTITION measures one other Move on
+ * its own. Moves differ in cost, so compare the improvement reached in a given time as well.
+ *
+ * @author robbi.mount
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OptimizerStepBenchmark {
+
+    @Param({"TRULY_RANDOM", "HIGH_CENTERED", "SIMULATED_ANNEALING"})
+    private OptimizationMode mode;
+
+    @Param({"100", "10000"})
+    private int packCount;
+
+    @Param({"4", "12"})
+    private int cellsPerPack;
+
+    @Param({LotGenerator.GENERATED, LotGenerator.SAMPLE})
+    private String source;
+
+    @Param({"DEFAULT"})
+    private String objective;
+
+    @Param({"ALL", "SWAP"})
+    private String moves;
+
+    private LotOptimizer optimizer;
+
+    @Setup
+    public void setUp() throws IOException {
+        optimizer = new LotOptimizer(
+                LotGenerator.packs(LotGenerator.impedances(source, packCount * cellsPerPack), cellsPerPack),
+                mode, objective.equals("DEFAULT") ? StandardObjective.forMode(mode) : StandardObjective.valueOf(objective),
+                moves.equals("ALL") ? EnumSet.allOf(Move.class) : EnumSet.of(Move.valueOf(moves)),
+                new AnnealingSchedule(), new SeededRandom(packCount));
+    }
+
+    @Benchmark
+    public boolean step() {
+        return optimizer.step();
+    }
+}
@@ -0,0 +1,48 @@
+package com.powerinnovations.batteryoptimizer.benchmark;
+
+import com.powerinnovations.batteryoptimizer.model.Pack;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the spread calculation of a single pack.
+ *
+ * @author robbi.mount
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PackBenchmark {
+
+    @Param({"4", "12", "48"})
+    private int cellsPerPack;
+
+    @Param({LotGenerator.GENERATED, LotGenerator.SAMPLE})
+    private String source;
+
+    private Pack pack;
+
+    @Setup
+    public void setUp() throws IOException {
+        pack = LotGenerator.packs(LotGenerator.impedances(source, cellsPerPack), cellsPerPack).get(0);
+    }
+
+    @Benchmark
+    public double calculateSpreadImp() {
+        return pack.calculateSpreadImp();
+    }
+}
@@ -0,0 +1,63 @@
+package com.powerinnovations.batteryoptimizer.benchmark;
+
+import com.powerinnovations.batteryoptimizer.model.Pack;
+import com.powerinnovations.batteryoptimizer.service.PackUtils;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the lot statistics PackUtils computes for every display update.
+ *
+ * @author robbi.mount
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PackUtilsBenchmark {
+
+    @Param({"100", "10000"})
+    private int packCount;
+
+    @Param({"4", "12"})
+    private int cellsPerPack;
+
+    @Param({LotGenerator.GENERATED, LotGenerator.SAMPLE})
+    private String source;
+
+    private List<Pack> packList;
+
+    @Setup
+    public void setUp() throws IOException {
+        packList = LotGenerator.packs(LotGenerator.impedances(source, packCount * cellsPerPack), cellsPerPack);
+    }
+
+    @Benchmark
+    public double calculateAverageImp() {
+        return PackUtils.calculateAverageImp(packList);
+    }
+
+    @Benchmark
+    public double calculateHigh() {
+        return PackUtils.calculateHigh(packList);
+    }
+
+    @Benchmark
+    public double calculateLow() {
+        return PackUtils.calculateLow(packList);
+    }
+}
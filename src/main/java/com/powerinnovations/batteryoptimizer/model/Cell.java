@@ -23,6 +23,17 @@ public final class Cell implements Comparable {
         this.address = address;
     }
 
+    /**
+     * Constructor for the Cell object from an impedance that has already been parsed.
+     *
+     * @param address the cell address within a pack.
+     * @param impedance the impedance of the cell.
+     */
+    public Cell(String address, double impedance) {
+        this.impedance = impedance;
+        this.address = address;
+    }
+
     /**
      * Returns the impedance value of the cell.
      *
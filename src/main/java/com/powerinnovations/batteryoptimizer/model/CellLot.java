@@ -0,0 +1,165 @@
+package com.powerinnovations.batteryoptimizer.model;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A CellLot holds a large collection of measured cells in primitive arrays. Impedances are kept in
+ * a double array and cell addresses as UTF-8 bytes in a single shared pool, so adding a cell
+ * allocates no objects. Cell objects are only created on request.
+ *
+ * @author robbi.mount
+ */
+public final class CellLot {
+
+    private double[] impedance;
+    private int[] addressStart;
+    private byte[] addressPool;
+    private int size;
+    private int poolSize;
+
+    /**
+     * Constructs an empty lot.
+     *
+     * @param expectedSize the number of cells the lot is expected to hold.
+     */
+    public CellLot(int expectedSize) {
+        int capacity = Math.max(16, expectedSize);
+        this.impedance = new double[capacity];
+        this.addressStart = new int[capacity + 1];
+        this.addressPool = new byte[(int) Math.min(Integer.MAX_VALUE - 8, capacity * 8L)];
+    }
+
+    /**
+     * Adds a cell to the lot.
+     *
+     * @param address a buffer holding the UTF-8 encoded cell address.
+     * @param offset the offset of the address in the buffer.
+     * @param length the length of the address in bytes.
+     * @param value the impedance of the cell.
+     */
+    public void add(byte[] address, int offset, int length, double value) {
+        ensureCapacity(length);
+        System.arraycopy(address, offset, addressPool, poolSize, length);
+        add(length, value);
+    }
+
+    /**
+     * Adds a cell to the lot.
+     *
+     * @param buffer a buffer holding the UTF-8 encoded cell address.
+     * @param offset the absolute position of the address in the buffer.
+     * @param length the length of the address in bytes.
+     * @param value the impedance of the cell.
+     */
+    public void add(ByteBuffer buffer, int offset, int length, double value) {
+        ensureCapacity(length);
+        for (int i = 0; i < length; i++) {
+            addressPool[poolSize + i] = buffer.get(offset + i);
+        }
+        add(length, value);
+    }
+
+    /**
+     * Adds a cell to the lot.
+     *
+     * @param address the cell address.
+     * @param value the impedance of the cell.
+     */
+    public void add(String address, double value) {
+        byte[] bytes = address.getBytes(StandardCharsets.UTF_8);
+        add(bytes, 0, bytes.length, value);
+    }
+
+    /**
+     * Returns the number of cells in the lot.
+     *
+     * @return the cell count.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the impedance of a cell.
+     *
+     * @param index the cell index.
+     * @return the impedance.
+     */
+    public double getImpedance(int index) {
+        checkIndex(index);
+        return impedance[index];
+    }
+
+    /**
+     * Returns the address of a cell.
+     *
+     * @param index the cell index.
+     * @return the address.
+     */
+    public String getAddress(int index) {
+        checkIndex(index);
+        int start = addressStart[index];
+        return new String(addressPool, start, addressStart[index + 1] - start, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns a copy of the impedances of every cell.
+     *
+     * @return a new array of impedances, in lot order.
+     */
+    public double[] getImpedances() {
+        return Arrays.copyOf(impedance, size);
+    }
+
+    /**
+     * Creates a Cell object for a cell of the lot.
+     *
+     * @param index the cell index.
+     * @return a new Cell.
+     */
+    public Cell getCell(int index) {
+        return new Cell(getAddress(index), getImpedance(index));
+    }
+
+    /**
+     * Creates Cell objects for every cell of the lot.
+     *
+     * @return a new list of Cells, in lot order.
+     */
+    public List<Cell> toCells() {
+        List<Cell> cells = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            cells.add(getCell(i));
+        }
+        return cells;
+    }
+
+    private void add(int length, double value) {
+        impedance[size] = value;
+        addressStart[size] = poolSize;
+        poolSize += length;
+        size++;
+        addressStart[size] = poolSize;
+    }
+
+    private void ensureCapacity(int addressLength) {
+        if (size + 1 >= impedance.length) {
+            int capacity = impedance.length * 2;
+            impedance = Arrays.copyOf(impedance, capacity);
+            addressStart = Arrays.copyOf(addressStart, capacity + 1);
+        }
+        if (poolSize + addressLength > addressPool.length) {
+            addressPool = Arrays.copyOf(addressPool, Math.max(addressPool.length * 2, poolSize + addressLength));
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Cell " + index + " is outside the lot of " + size + ".");
+        }
+    }
+}
@@ -1,15 +1,20 @@
 package com.powerinnovations.batteryoptimizer.model;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
-import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.IntUnaryOperator;
 
 /**
  * A Pack object describes a single Lithium Iron Phosphate battery with 12 cells. (realistically the
  * number of cells is irrelevant, however the results and export options are dependant upon 12
  * cells.
  *
+ * The sum, low and high impedance of the cells are kept up to date as cells are added and removed,
+ * so the impedance spread can be read without walking the Cell collection.
+ *
  * @author robbi.mount
  * @version 1.0 June 2016
  */
@@ -17,6 +22,10 @@ public final class Pack implements Comparable {
 
     private final List<Cell> cells;
     private final String id;
+    private double sum;
+    private double low;
+    private double high;
+    private double spread;
 
     /**
      * Constructor for a Pack object.
@@ -24,8 +33,9 @@ public final class Pack implements Comparable {
      * @param newId the pack ID or number.
      */
     public Pack(String newId) {
-        this.cells = new LinkedList();
+        this.cells = new ArrayList<>();
         this.id = newId;
+        recalculate();
     }
 
     /**
@@ -35,41 +45,88 @@ public final class Pack implements Comparable {
      */
     public void addCell(Cell c) {
         cells.add(c);
+        sum += c.getImpedance();
+        if (c.getImpedance() > high) {
+            high = c.getImpedance();
+        }
+        if (c.getImpedance() < low) {
+            low = c.getImpedance();
+        }
+        updateSpread();
     }
 
     /**
-     * Calculates the impedance spread of the pack in terms of the range divided by the average
-     * impedance.
+     * Removes a cell from the Cell collection.
+     *
+     * @param c the cell to remove.
+     * @return true if the cell was part of this pack.
+     */
+    public boolean removeCell(Cell c) {
+        int index = cells.indexOf(c);
+        if (index < 0) {
+            return false;
+        }
+        removeCellAt(index);
+        return true;
+    }
+
+    /**
+     * Returns the impedance spread of the pack in terms of the range divided by the average
+     * impedance. The value is maintained as cells are added and removed, so this is a constant
+     * time lookup.
      *
      * @return the impedance spread percent.
      */
     public double calculateSpreadImp() {
-        double average = 0;
-        double high = 0;
-        double low = 99999;
-        for (Cell c : cells) {
-            average += c.getImpedance();
+        return spread;
+    }
 
-            if (c.getImpedance() > high) {
-                high = c.getImpedance();
-            }
-            if (c.getImpedance() < low) {
-                low = c.getImpedance();
-            }
-        }
-        average /= cells.size();
-        return (high - low) / average;
+    /**
+     * Returns the average impedance of the cells in the pack.
+     *
+     * @return the average impedance.
+     */
+    public double getAverageImp() {
+        return sum / cells.size();
+    }
 
+    /**
+     * Returns the lowest cell impedance in the pack.
+     *
+     * @return the lowest impedance.
+     */
+    public double getLowImp() {
+        return low;
+    }
+
+    /**
+     * Returns the highest cell impedance in the pack.
+     *
+     * @return the highest impedance.
+     */
+    public double getHighImp() {
+        return high;
     }
 
     /**
-     * Returns a random cell from the Cell collection.
+     * Removes and returns a random cell from the Cell collection. The choice is drawn from the
+     * calling thread's own generator, so it is not reproducible; see getRandomCell(IntUnaryOperator).
      *
      * @return a random cell
      */
     public Cell getRandomCell() {
-        Random ran = new Random();
-        return cells.remove(ran.nextInt(cells.size()));
+        return removeCellAt(ThreadLocalRandom.current().nextInt(cells.size()));
+    }
+
+    /**
+     * Removes and returns a cell chosen by the given random number source, for example
+     * seededRandom::nextInt, so that the same sequence always removes the same cells.
+     *
+     * @param random returns a random index below the bound it is given.
+     * @return a random cell
+     */
+    public Cell getRandomCell(IntUnaryOperator random) {
+        return removeCellAt(random.applyAsInt(cells.size()));
     }
 
     /**
@@ -96,12 +153,13 @@ public final class Pack implements Comparable {
     }
 
     /**
-     * Returns the Cell collection.
+     * Returns the Cell collection. The collection is read only; use addCell and removeCell to keep
+     * the pack statistics current.
      *
      * @return the Cell collection.
      */
     public List<Cell> getCells() {
-        return cells;
+        return Collections.unmodifiableList(cells);
     }
 
     /**
@@ -121,9 +179,9 @@ public final class Pack implements Comparable {
      */
     @Override
     public int compareTo(Object o) {
-        if (calculateSpreadImp() < ((Pack) o).calculateSpreadImp()) {
+        if (spread < ((Pack) o).spread) {
             return -1;
-        } else if (calculateSpreadImp() > ((Pack) o).calculateSpreadImp()) {
+        } else if (spread > ((Pack) o).spread) {
             return 1;
         } else {
             return 0;
@@ -151,4 +209,45 @@ public final class Pack implements Comparable {
         return hash;
     }
 
+    /**
+     * Removes the cell at the given position. The low and high are only recalculated when the
+     * removed cell held one of them.
+     *
+     * @param index the position of the cell.
+     * @return the removed cell.
+     */
+    private Cell removeCellAt(int index) {
+        Cell c = cells.remove(index);
+        sum -= c.getImpedance();
+        if (c.getImpedance() <= low || c.getImpedance() >= high) {
+            recalculate();
+        } else {
+            updateSpread();
+        }
+        return c;
+    }
+
+    /**
+     * Recalculates the sum, low and high from the Cell collection.
+     */
+    private void recalculate() {
+        sum = 0;
+        high = 0;
+        low = 99999;
+        for (Cell c : cells) {
+            sum += c.getImpedance();
+            if (c.getImpedance() > high) {
+                high = c.getImpedance();
+            }
+            if (c.getImpedance() < low) {
+                low = c.getImpedance();
+            }
+        }
+        updateSpread();
+    }
+
+    private void updateSpread() {
+        spread = (high - low) / (sum / cells.size());
+    }
+
 }
@@ -1,6 +1,5 @@
 package com.powerinnovations.batteryoptimizer.model;
 
-import java.text.DecimalFormat;
 import javax.swing.table.*;
 import java.util.*;
 
@@ -8,13 +7,20 @@ import java.util.*;
  * This class is the model for the jTable in the Results JFrame. It displays the detailed Pack
  * collection.
  *
+ * The packs are copied into columns when the model is built, so rendering a cell is an array
+ * lookup. Values are returned unformatted (the spread as a Double, each cell as its Cell object)
+ * so that the columns sort numerically; formatting is left to the table's renderers, which only
+ * run for the rows on screen.
+ *
  * @author robbi.mount
  * @version 1.0 June 2016
  */
 public class ResultModel extends AbstractTableModel {
 
-    private final List<Pack> packs;
-    private final DecimalFormat df;
+    private final int cellsPerPack;
+    private final String[] ids;
+    private final double[] spreads;
+    private final Cell[][] cells; //Indexed by cell position, then by row.
 
     /**
      * Main constructor
@@ -22,18 +28,29 @@ public class ResultModel extends AbstractTableModel {
      * @param packs the list of Pack objects to be displayed
      */
     public ResultModel(List<Pack> packs) {
-        this.df = new DecimalFormat("#0.00");
-        this.packs = packs;
+        this.cellsPerPack = packs.isEmpty() ? 0 : packs.get(0).getCellCount();
+        this.ids = new String[packs.size()];
+        this.spreads = new double[packs.size()];
+        this.cells = new Cell[cellsPerPack][packs.size()];
+        for (int row = 0; row < packs.size(); row++) {
+            Pack pack = packs.get(row);
+            ids[row] = pack.getID();
+            spreads[row] = pack.calculateSpreadImp();
+            List<Cell> packCells = pack.getCells();
+            for (int c = 0; c < cellsPerPack; c++) {
+                cells[c][row] = packCells.get(c);
+            }
+        }
     }
 
     /**
-     * Returns the number of rows in the table based on number of customers.
+     * Returns the number of rows in the table based on number of packs.
      *
      * @return the row count.
      */
     @Override
     public int getRowCount() {
-        return packs.size();
+        return ids.length;
     }
 
     /**
@@ -43,12 +60,11 @@ public class ResultModel extends AbstractTableModel {
      */
     @Override
     public int getColumnCount() {
-        int size = packs.get(0).getCellCount() + 2; //numbe of cells plus two columns for line# and average
-        return size;
+        return cellsPerPack + 2; //number of cells plus two columns for pack ID and spread
     }
 
     /**
-     * Returns the value at a given cell.
+     * Returns the value at a given cell: the pack ID, a Cell, or the spread as a Double.
      *
      * @param rowIndex
      * @param columnIndex
@@ -56,17 +72,30 @@ public class ResultModel extends AbstractTableModel {
      */
     @Override
     public Object getValueAt(int rowIndex, int columnIndex) {
-        @SuppressWarnings("UnusedAssignment")
-        String value = "";
         if (columnIndex == 0) {
-            value = packs.get(rowIndex).getID();
-        } else if (columnIndex == packs.get(0).getCellCount() + 1) {
-            value = df.format(packs.get(rowIndex).calculateSpreadImp() * 100) + "%";
+            return ids[rowIndex];
+        } else if (columnIndex == cellsPerPack + 1) {
+            return spreads[rowIndex];
         } else {
-            value = packs.get(rowIndex).getCells().get(columnIndex - 1).getAddress() + " (" + df.format(packs.get(rowIndex).getCells().get(columnIndex - 1).getImpedance() * 1000) + " mΩ)";
+            return cells[columnIndex - 1][rowIndex];
         }
-        return value;
+    }
 
+    /**
+     * Returns the class of the values in a column.
+     *
+     * @param columnIndex
+     * @return String for the pack ID, Double for the spread, otherwise Cell.
+     */
+    @Override
+    public Class<?> getColumnClass(int columnIndex) {
+        if (columnIndex == 0) {
+            return String.class;
+        } else if (columnIndex == cellsPerPack + 1) {
+            return Double.class;
+        } else {
+            return Cell.class;
+        }
     }
 
     /**
@@ -79,10 +108,50 @@ public class ResultModel extends AbstractTableModel {
     public String getColumnName(int column) {
         if (column == 0) {
             return "Pack:";
-        } else if (column == packs.get(0).getCellCount() + 1) {
+        } else if (column == cellsPerPack + 1) {
             return "Spread:";
         } else {
             return String.valueOf(column) + ":";
         }
     }
+
+    /**
+     * Returns the number of cells in each pack.
+     *
+     * @return the cellsPerPack
+     */
+    public int getCellsPerPack() {
+        return cellsPerPack;
+    }
+
+    /**
+     * Returns the ID of the pack in a row.
+     *
+     * @param rowIndex the row.
+     * @return the pack ID.
+     */
+    public String getID(int rowIndex) {
+        return ids[rowIndex];
+    }
+
+    /**
+     * Returns the impedance spread of the pack in a row.
+     *
+     * @param rowIndex the row.
+     * @return the spread.
+     */
+    public double getSpread(int rowIndex) {
+        return spreads[rowIndex];
+    }
+
+    /**
+     * Returns a cell of the pack in a row.
+     *
+     * @param rowIndex the row.
+     * @param index the position of the cell in the pack, from 0.
+     * @return the Cell.
+     */
+    public Cell getCell(int rowIndex, int index) {
+        return cells[index][rowIndex];
+    }
 }
@@ -0,0 +1,190 @@
+package com.powerinnovations.batteryoptimizer.service;
+
+/**
+ * Describes the temperature schedule of a simulated annealing run. A run is made of cooling
+ * cycles. Each cycle cools from a starting temperature to the final temperature over a fixed
+ * number of steps using the selected cooling curve. At the end of a cycle the search is reheated:
+ * it returns to the best arrangement found so far and starts a new cycle at the starting
+ * temperature scaled by the reheat factor. Once every reheat is used, the search continues at the
+ * final temperature.
+ *
+ * Temperatures are relative to the objective of the arrangement the run starts from, so one
+ * schedule suits lots of any impedance range.
+ *
+ * @author robbi.mount
+ */
+public class AnnealingSchedule {
+
+    /**
+     * The shape of the temperature curve within a cycle.
+     */
+    public enum Cooling {
+        /**
+         * The temperature is multiplied by a constant factor every step.
+         */
+        GEOMETRIC,
+        /**
+         * The temperature falls by a constant amount every step.
+         */
+        LINEAR,
+        /**
+         * The temperature falls with the logarithm of the step count, cooling fast at first and
+         * slowly thereafter.
+         */
+        LOGARITHMIC
+    }
+
+    private Cooling cooling = Cooling.GEOMETRIC;
+    private double initialTemperature = 0.02;
+    private double finalTemperature = 0.0001;
+    private long cycleLength = 1000000;
+    private int reheats = 4;
+    private double reheatFactor = 0.5;
+
+    /**
+     * Returns the temperature at a step within a cycle.
+     *
+     * @param step the number of steps taken in the current cycle.
+     * @param startTemperature the absolute starting temperature of the current cycle.
+     * @param endTemperature the absolute final temperature.
+     * @return the absolute temperature.
+     */
+    public double temperature(long step, double startTemperature, double endTemperature) {
+        if (step >= cycleLength || startTemperature <= endTemperature) {
+            return endTemperature;
+        }
+        double progress = (double) step / cycleLength;
+        switch (cooling) {
+            case LINEAR:
+                return startTemperature - (startTemperature - endTemperature) * progress;
+            case LOGARITHMIC:
+                double scale = Math.log1p(cycleLength) / (startTemperature / endTemperature - 1);
+                return Math.max(endTemperature, startTemperature / (1 + Math.log1p(step) / scale));
+            default:
+                return startTemperature * Math.pow(endTemperature / startTemperature, progress);
+        }
+    }
+
+    /**
+     * Returns the cooling curve.
+     *
+     * @return the cooling
+     */
+    public Cooling getCooling() {
+        return cooling;
+    }
+
+    /**
+     * Sets the cooling curve.
+     *
+     * @param cooling the cooling to set
+     */
+    public void setCooling(Cooling cooling) {
+        this.cooling = cooling;
+    }
+
+    /**
+     * Returns the starting temperature as a fraction of the starting objective.
+     *
+     * @return the initialTemperature
+     */
+    public double getInitialTemperature() {
+        return initialTemperature;
+    }
+
+    /**
+     * Sets the starting temperature as a fraction of the starting objective.
+     *
+     * @param initialTemperature the initialTemperature to set
+     */
+    public void setInitialTemperature(double initialTemperature) {
+        if (!(initialTemperature > 0)) {
+            throw new IllegalArgumentException("The initial temperature must be positive.");
+        }
+        this.initialTemperature = initialTemperature;
+    }
+
+    /**
+     * Returns the final temperature as a fraction of the starting objective.
+     *
+     * @return the finalTemperature
+     */
+    public double getFinalTemperature() {
+        return finalTemperature;
+    }
+
+    /**
+     * Sets the final temperature as a fraction of the starting objective.
+     *
+     * @param finalTemperature the finalTemperature to set
+     */
+    public void setFinalTemperature(double finalTemperature) {
+        if (!(finalTemperature > 0)) {
+            throw new IllegalArgumentException("The final temperature must be positive.");
+        }
+        this.finalTemperature = finalTemperature;
+    }
+
+    /**
+     * Returns the number of steps in a cooling cycle.
+     *
+     * @return the cycleLength
+     */
+    public long getCycleLength() {
+        return cycleLength;
+    }
+
+    /**
+     * Sets the number of steps in a cooling cycle.
+     *
+     * @param cycleLength the cycleLength to set
+     */
+    public void setCycleLength(long cycleLength) {
+        if (cycleLength < 1) {
+            throw new IllegalArgumentException("A cooling cycle must have at least one step.");
+        }
+        this.cycleLength = cycleLength;
+    }
+
+    /**
+     * Returns the number of times the search is reheated.
+     *
+     * @return the reheats
+     */
+    public int getReheats() {
+        return reheats;
+    }
+
+    /**
+     * Sets the number of times the search is reheated.
+     *
+     * @param reheats the reheats to set
+     */
+    public void setReheats(int reheats) {
+        if (reheats < 0) {
+            throw new IllegalArgumentException("The number of reheats cannot be negative.");
+        }
+        this.reheats = reheats;
+    }
+
+    /**
+     * Returns the factor applied to the starting temperature on each reheat.
+     *
+     * @return the reheatFactor
+     */
+    public double getReheatFactor() {
+        return reheatFactor;
+    }
+
+    /**
+     * Sets the factor applied to the starting temperature on each reheat.
+     *
+     * @param reheatFactor the reheatFactor to set
+     */
+    public void setReheatFactor(double reheatFactor) {
+        if (!(reheatFactor > 0)) {
+            throw new IllegalArgumentException("The reheat factor must be positive.");
+        }
+        this.reheatFactor = reheatFactor;
+    }
+}
@@ -0,0 +1,365 @@
+package com.powerinnovations.batteryoptimizer.service;
+
+import com.powerinnovations.batteryoptimizer.model.Cell;
+import com.powerinnovations.batteryoptimizer.model.Pack;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Places newly measured cells into an existing, optimized arrangement without optimizing it again.
+ * Cells that are not yet in a pack wait in a pool of unassigned cells, so the number of cells no
+ * longer has to divide by the pack size.
+ *
+ * Every change is local. A new cell is first offered to the few packs whose average impedance is
+ * nearest its own, and swapped for one of their cells if that narrows the pack; the cell it
+ * replaces goes back to the pool and is offered in turn. Once the pool holds enough cells, the
+ * SortedPartitionSolver builds as many new packs from it as it can without any of them exceeding
+ * the highest spread already in the lot. Each new pack is then repaired against its neighbours by
+ * pairwise cell swaps that lower the higher spread of the two. Packs far from the new cells in
+ * impedance are never touched, and no pack is ever made wider than the highest spread of the lot.
+ *
+ * The packs handed in are never modified; a pack is copied the first time it changes.
+ *
+ * @author robbi.mount
+ */
+public class CellInserter {
+
+    private static final int NEIGHBOURS = 4; //Packs either side of a cell or pack considered for swaps.
+    private static final int MAX_CHAIN = 16; //Cells displaced in turn by a single insertion.
+    private static final double EPSILON = 1e-12;
+    private static final Comparator<Cell> BY_IMPEDANCE = Comparator.comparingDouble(Cell::getImpedance);
+
+    private final int cellsPerPack;
+    private final List<Pack> packs; //In ascending order of average impedance.
+    private final List<Cell> pool; //In ascending order of impedance.
+    private final Map<Pack, Boolean> owned = new IdentityHashMap<>(); //Packs copied by this inserter.
+    private int nextId;
+
+    /**
+     * Constructs an inserter over an arrangement.
+     *
+     * @param packList the current Pack collection. Every pack must hold cellsPerPack cells.
+     * @param unassigned cells waiting for a pack, possibly none.
+     * @param cellsPerPack the number of cells per pack.
+     */
+    public CellInserter(List<Pack> packList, Collection<Cell> unassigned, int cellsPerPack) {
+        if (cellsPerPack < 2) {
+            throw new IllegalArgumentException("A pack must contain at least two cells.");
+        }
+        this.cellsPerPack = cellsPerPack;
+        this.packs = new ArrayList<>(packList);
+        for (Pack pack : packs) {
+            if (pack.getCellCount() != cellsPerPack) {
+                throw new IllegalArgumentException("Pack " + pack.getID() + " does not hold " + cellsPerPack + " cells.");
+            }
+            try {
+                nextId = Math.max(nextId, Integer.parseInt(pack.getID()) + 1);
+            } catch (NumberFormatException ex) {
+                nextId = Math.max(nextId, packs.size());
+            }
+        }
+        packs.sort(Comparator.comparingDouble(Pack::getAverageImp));
+        this.pool = new ArrayList<>(unassigned);
+        pool.sort(BY_IMPEDANCE);
+    }
+
+    /**
+     * Places a batch of newly measured cells. Cells that fit nowhere yet stay in the pool and are
+     * reconsidered with the next batch. If there are no packs yet, the first packs are built
+     * from the pool whatever their spread.
+     *
+     * @param cells the new cells.
+     * @return the number of new packs built.
+     */
+    public int insert(Collection<Cell> cells) {
+        for (Cell c : cells) {
+            Cell waiting = c;
+            for (int chain = 0; waiting != null && chain < MAX_CHAIN; chain++) {
+                waiting = swapIntoPack(waiting);
+            }
+            if (waiting != null) {
+                addToPool(waiting);
+            }
+        }
+        return buildPacks(packs.isEmpty() ? Double.MAX_VALUE : getHigh());
+    }
+
+    /**
+     * Builds as many packs as the pool allows, whatever their spread. Use at the end of a shift to
+     * assign the cells left over.
+     *
+     * @return the number of new packs built.
+     */
+    public int assignRemaining() {
+        return buildPacks(Double.MAX_VALUE);
+    }
+
+    /**
+     * Returns the arrangement, including any new packs.
+     *
+     * @return a new list of Pack objects, in ascending order of average impedance.
+     */
+    public List<Pack> getPacks() {
+        owned.clear(); //The caller may now hold any of these packs.
+        return new ArrayList<>(packs);
+    }
+
+    /**
+     * Returns the cells waiting for a pack.
+     *
+     * @return a new list of the unassigned cells, in ascending order of impedance.
+     */
+    public List<Cell> getUnassigned() {
+        return new ArrayList<>(pool);
+    }
+
+    /**
+     * Returns the number of cells per pack.
+     *
+     * @return the cellsPerPack
+     */
+    public int getCellsPerPack() {
+        return cellsPerPack;
+    }
+
+    /**
+     * Returns the highest pack spread of the arrangement.
+     *
+     * @return the highest spread, or 0 if there are no packs.
+     */
+    public double getHigh() {
+        return PackUtils.calculateHigh(packs);
+    }
+
+    /**
+     * Offers a cell to the packs nearest its impedance and swaps it for the cell whose removal
+     * narrows a pack the most.
+     *
+     * @param c the cell to place.
+     * @return the cell displaced from a pack, or the given cell if no swap narrows any pack.
+     */
+    private Cell swapIntoPack(Cell c) {
+        if (packs.isEmpty()) {
+            return c;
+        }
+        int centre = nearestPack(c.getImpedance());
+        int bestPack = -1;
+        Cell bestOut = null;
+        double bestGain = EPSILON;
+        for (int p = Math.max(0, centre - NEIGHBOURS); p <= Math.min(packs.size() - 1, centre + NEIGHBOURS); p++) {
+            Pack pack = packs.get(p);
+            for (Cell out : pack.getCells()) {
+                double gain = pack.calculateSpreadImp() - spreadWith(pack, out, c);
+                if (gain > bestGain) {
+                    bestGain = gain;
+                    bestPack = p;
+                    bestOut = out;
+                }
+            }
+        }
+        if (bestPack < 0) {
+            return c;
+        }
+        Pack pack = editable(bestPack);
+        pack.removeCell(bestOut);
+        pack.addCell(c);
+        reposition(bestPack);
+        return bestOut;
+    }
+
+    /**
+     * Builds new packs from the pool, as many as possible without any exceeding a spread limit,
+     * and repairs each against its neighbours.
+     *
+     * @param limit the highest spread a new pack may have.
+     * @return the number of packs built.
+     */
+    private int buildPacks(double limit) {
+        int most = pool.size() / cellsPerPack;
+        if (most == 0) {
+            return 0;
+        }
+        SortedPartitionSolver solver = new SortedPartitionSolver(pool, cellsPerPack);
+        //The highest spread of the solution only grows with the number of packs built.
+        int lo = 0;
+        int hi = most;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            solver.solve(mid);
+            if (solver.getMaxSpread() <= limit) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        if (lo == 0) {
+            return 0;
+        }
+        List<Pack> built = solver.solve(lo);
+        pool.clear();
+        pool.addAll(solver.getUnassigned());
+        for (Pack solved : built) {
+            Pack pack = new Pack(Integer.toString(nextId++));
+            solved.getCells().stream().forEach((c) -> {
+                pack.addCell(c);
+            });
+            owned.put(pack, Boolean.TRUE);
+            int index = nearestPack(pack.getAverageImp());
+            if (index < packs.size() && packs.get(index).getAverageImp() < pack.getAverageImp()) {
+                index++;
+            }
+            packs.add(index, pack);
+            repair(pack);
+        }
+        return built.size();
+    }
+
+    /**
+     * Swaps cells between a pack and its neighbours while a swap lowers the higher spread of the
+     * two packs involved.
+     *
+     * @param pack the pack to repair.
+     */
+    private void repair(Pack pack) {
+        boolean improved = true;
+        for (int pass = 0; improved && pass < cellsPerPack; pass++) {
+            improved = false;
+            int index = indexOf(pack);
+            for (int p = Math.max(0, index - NEIGHBOURS); p <= Math.min(packs.size() - 1, index + NEIGHBOURS); p++) {
+                if (p != index && swapBetween(indexOf(pack), p)) {
+                    improved = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Makes the single cell swap between two packs that lowers the higher of their spreads the
+     * most, if any does.
+     *
+     * @return true if a swap was made.
+     */
+    private boolean swapBetween(int a, int b) {
+        Pack packA = packs.get(a);
+        Pack packB = packs.get(b);
+        double baseline = Math.max(packA.calculateSpreadImp(), packB.calculateSpreadImp());
+        Cell bestA = null;
+        Cell bestB = null;
+        double best = baseline - EPSILON;
+        for (Cell ca : packA.getCells()) {
+            for (Cell cb : packB.getCells()) {
+                double result = Math.max(spreadWith(packA, ca, cb), spreadWith(packB, cb, ca));
+                if (result < best) {
+                    best = result;
+                    bestA = ca;
+                    bestB = cb;
+                }
+            }
+        }
+        if (bestA == null) {
+            return false;
+        }
+        Pack editableA = editable(a);
+        Pack editableB = editable(b);
+        editableA.removeCell(bestA);
+        editableB.removeCell(bestB);
+        editableA.addCell(bestB);
+        editableB.addCell(bestA);
+        reposition(indexOf(editableA));
+        reposition(indexOf(editableB));
+        return true;
+    }
+
+    /**
+     * Returns the spread a pack would have with one of its cells replaced.
+     */
+    private static double spreadWith(Pack pack, Cell out, Cell in) {
+        double sum = in.getImpedance();
+        double low = in.getImpedance();
+        double high = in.getImpedance();
+        for (Cell c : pack.getCells()) {
+            if (c != out) {
+                sum += c.getImpedance();
+                low = Math.min(low, c.getImpedance());
+                high = Math.max(high, c.getImpedance());
+            }
+        }
+        return (high - low) / (sum / pack.getCellCount());
+    }
+
+    /**
+     * Returns the pack at an index, first replacing it with a copy if it is not already one made
+     * by this inserter.
+     */
+    private Pack editable(int index) {
+        Pack pack = packs.get(index);
+        if (!owned.containsKey(pack)) {
+            pack = pack.getClone();
+            owned.put(pack, Boolean.TRUE);
+            packs.set(index, pack);
+        }
+        return pack;
+    }
+
+    /**
+     * Moves a pack whose average impedance has changed back into order. Averages only change a
+     * little with each swap, so the pack moves at most a few places.
+     */
+    private void reposition(int index) {
+        Pack pack = packs.get(index);
+        while (index > 0 && packs.get(index - 1).getAverageImp() > pack.getAverageImp()) {
+            packs.set(index, packs.get(index - 1));
+            packs.set(--index, pack);
+        }
+        while (index < packs.size() - 1 && packs.get(index + 1).getAverageImp() < pack.getAverageImp()) {
+            packs.set(index, packs.get(index + 1));
+            packs.set(++index, pack);
+        }
+    }
+
+    /**
+     * Returns the index of the pack whose average impedance is nearest a value.
+     */
+    private int nearestPack(double impedance) {
+        int lo = 0;
+        int hi = packs.size() - 1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (packs.get(mid).getAverageImp() < impedance) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        if (lo > 0 && impedance - packs.get(lo - 1).getAverageImp() < packs.get(lo).getAverageImp() - impedance) {
+            lo--;
+        }
+        return lo;
+    }
+
+    /**
+     * Finds a pack near where its average impedance places it.
+     */
+    private int indexOf(Pack pack) {
+        int centre = nearestPack(pack.getAverageImp());
+        for (int d = 0; d < packs.size(); d++) {
+            if (centre - d >= 0 && packs.get(centre - d) == pack) {
+                return centre - d;
+            }
+            if (centre + d < packs.size() && packs.get(centre + d) == pack) {
+                return centre + d;
+            }
+        }
+        throw new IllegalStateException("Pack " + pack.getID() + " is not part of the arrangement.");
+    }
+
+    private void addToPool(Cell c) {
+        int index = Collections.binarySearch(pool, c, BY_IMPEDANCE);
+        pool.add(index < 0 ? -index - 1 : index, c);
+    }
+}
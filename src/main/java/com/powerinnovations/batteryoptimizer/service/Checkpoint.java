@@ -0,0 +1,293 @@
+package com.powerinnovations.batteryoptimizer.service;
+
+import com.powerinnovations.batteryoptimizer.model.Cell;
+import com.powerinnovations.batteryoptimizer.model.Pack;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * A saved optimizer state: the best arrangement of the lot, its objective, the state of the random
+ * number generator and the number of steps performed, together with any cells still waiting for a
+ * pack. A checkpoint is enough to resume a run where it stopped, or to warm-start a new run from an
+ * earlier result.
+ *
+ * Checkpoints are written in a compact binary format. The file starts with a magic number and a
+ * version, ends with a CRC32 of everything before it, and is always written to a temporary file,
+ * forced to disk and then renamed over the target, so a crash or power loss mid-write leaves
+ * either the old checkpoint or the new one behind.
+ *
+ * @author robbi.mount
+ */
+public final class Checkpoint {
+
+    private static final int MAGIC = 0x424F5054; //"BOPT"
+    private static final int VERSION = 2; //Version 1 had no unassigned cells.
+
+    private final OptimizationMode mode;
+    private final List<Pack> packs;
+    private final List<Cell> unassigned;
+    private final double bestObjective;
+    private final long iterations;
+    private final long seed;
+    private final long gamma;
+
+    /**
+     * Constructs a checkpoint.
+     *
+     * @param mode the method of optimization of the run.
+     * @param packs the best arrangement found so far.
+     * @param bestObjective the objective of that arrangement.
+     * @param iterations the total number of steps performed.
+     * @param random the random number source to resume from. Its state is copied.
+     */
+    public Checkpoint(OptimizationMode mode, List<Pack> packs, double bestObjective, long iterations,
+            SeededRandom random) {
+        this(mode, packs, Collections.emptyList(), bestObjective, iterations, random);
+    }
+
+    /**
+     * Constructs a checkpoint that also holds cells not yet assigned to a pack.
+     *
+     * @param mode the method of optimization of the run.
+     * @param packs the best arrangement found so far.
+     * @param unassigned the cells waiting for a pack.
+     * @param bestObjective the objective of that arrangement.
+     * @param iterations the total number of steps performed.
+     * @param random the random number source to resume from. Its state is copied.
+     */
+    public Checkpoint(OptimizationMode mode, List<Pack> packs, List<Cell> unassigned, double bestObjective,
+            long iterations, SeededRandom random) {
+        if (packs.isEmpty()) {
+            throw new IllegalArgumentException("A checkpoint must contain at least one pack.");
+        }
+        this.mode = mode;
+        this.packs = Collections.unmodifiableList(new ArrayList<>(packs));
+        this.unassigned = Collections.unmodifiableList(new ArrayList<>(unassigned));
+        this.bestObjective = bestObjective;
+        this.iterations = iterations;
+        this.seed = random.getSeed();
+        this.gamma = random.getGamma();
+    }
+
+    /**
+     * Reads a checkpoint from a file.
+     *
+     * @param file the checkpoint file.
+     * @return the checkpoint.
+     * @throws IOException thrown in the event of an IO error, or if the file is not a valid
+     * checkpoint. Counts are checked against the file length as they are read, so a damaged file
+     * is reported as such before its checksum is reached.
+     */
+    public static Checkpoint read(File file) throws IOException {
+        CRC32 crc = new CRC32();
+        try (DataInputStream in = new DataInputStream(new CheckedInputStream(
+                new BufferedInputStream(new FileInputStream(file)), crc))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(file.getName() + " is not an optimizer checkpoint.");
+            }
+            int version = in.readUnsignedShort();
+            if (version < 1 || version > VERSION) {
+                throw new IOException("Unsupported checkpoint version " + version + ".");
+            }
+            OptimizationMode mode = readMode(in, file);
+            double bestObjective = in.readDouble();
+            long iterations = in.readLong();
+            long seed = in.readLong();
+            long gamma = in.readLong();
+            int packCount = in.readInt();
+            int cellsPerPack = in.readInt();
+            //Every cell takes more than one byte, so a damaged count cannot exceed the file length.
+            if (packCount < 1 || cellsPerPack < 2 || (long) packCount * cellsPerPack > file.length()) {
+                throw damaged(file, "invalid pack count " + packCount + " of " + cellsPerPack + " cells");
+            }
+            List<Pack> packs = new ArrayList<>(packCount);
+            for (int p = 0; p < packCount; p++) {
+                Pack pack = new Pack(in.readUTF());
+                for (int c = 0; c < cellsPerPack; c++) {
+                    String address = in.readUTF();
+                    pack.addCell(new Cell(address, in.readDouble()));
+                }
+                packs.add(pack);
+            }
+            List<Cell> unassigned = new ArrayList<>();
+            if (version >= 2) {
+                int unassignedCount = in.readInt();
+                if (unassignedCount < 0 || unassignedCount > file.length()) {
+                    throw damaged(file, "invalid unassigned cell count " + unassignedCount);
+                }
+                for (int c = 0; c < unassignedCount; c++) {
+                    String address = in.readUTF();
+                    unassigned.add(new Cell(address, in.readDouble()));
+                }
+            }
+            long expected = crc.getValue();
+            if (in.readInt() != (int) expected) {
+                throw damaged(file, "checksum mismatch");
+            }
+            return new Checkpoint(mode, packs, unassigned, bestObjective, iterations, new SeededRandom(seed, gamma));
+        } catch (EOFException ex) {
+            throw new IOException(file.getName() + " is damaged: the file is truncated.", ex);
+        } catch (IllegalArgumentException ex) {
+            throw new IOException(file.getName() + " is damaged: " + ex.getMessage(), ex);
+        }
+    }
+
+    private static OptimizationMode readMode(DataInputStream in, File file) throws IOException {
+        String name = in.readUTF();
+        try {
+            return OptimizationMode.valueOf(name);
+        } catch (IllegalArgumentException ex) {
+            throw damaged(file, "unknown optimization mode " + name);
+        }
+    }
+
+    private static IOException damaged(File file, String reason) {
+        return new IOException(file.getName() + " is damaged: " + reason + ".");
+    }
+
+    /**
+     * Writes the checkpoint to a file, replacing it atomically.
+     *
+     * @param file the checkpoint file.
+     * @throws IOException thrown in the event of an IO error.
+     */
+    public void write(File file) throws IOException {
+        File dir = file.getAbsoluteFile().getParentFile();
+        File tmp = File.createTempFile(file.getName(), ".tmp", dir);
+        try {
+            CRC32 crc = new CRC32();
+            FileOutputStream fileOut = new FileOutputStream(tmp);
+            try (DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+                    new BufferedOutputStream(fileOut), crc))) {
+                out.writeInt(MAGIC);
+                out.writeShort(VERSION);
+                out.writeUTF(mode.name());
+                out.writeDouble(bestObjective);
+                out.writeLong(iterations);
+                out.writeLong(seed);
+                out.writeLong(gamma);
+                out.writeInt(packs.size());
+                out.writeInt(packs.get(0).getCellCount());
+                for (Pack pack : packs) {
+                    out.writeUTF(pack.getID());
+                    for (Cell c : pack.getCells()) {
+                        out.writeUTF(c.getAddress());
+                        out.writeDouble(c.getImpedance());
+                    }
+                }
+                out.writeInt(unassigned.size());
+                for (Cell c : unassigned) {
+                    out.writeUTF(c.getAddress());
+                    out.writeDouble(c.getImpedance());
+                }
+                out.flush();
+                out.writeInt((int) crc.getValue());
+                out.flush();
+                fileOut.getChannel().force(true); //The data must be on disk before the rename is.
+            }
+            try {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            forceDirectory(dir);
+        } finally {
+            Files.deleteIfExists(tmp.toPath());
+        }
+    }
+
+    /**
+     * Flushes a directory entry to disk so a completed rename survives a power loss. Not every
+     * platform can open a directory (Windows cannot), in which case this does nothing.
+     */
+    private static void forceDirectory(File dir) {
+        try (FileChannel channel = FileChannel.open(dir.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException ex) {
+            //The rename is still atomic, only its durability is left to the operating system.
+        }
+    }
+
+    /**
+     * Returns the method of optimization of the checkpointed run.
+     *
+     * @return the mode
+     */
+    public OptimizationMode getMode() {
+        return mode;
+    }
+
+    /**
+     * Returns the best arrangement found by the checkpointed run.
+     *
+     * @return an unmodifiable list of Pack objects
+     */
+    public List<Pack> getPacks() {
+        return packs;
+    }
+
+    /**
+     * Returns the cells that were waiting for a pack.
+     *
+     * @return an unmodifiable list of Cell objects
+     */
+    public List<Cell> getUnassigned() {
+        return unassigned;
+    }
+
+    /**
+     * Returns a copy of this checkpoint holding the given unassigned cells instead.
+     *
+     * @param cells the cells waiting for a pack.
+     * @return a new checkpoint.
+     */
+    public Checkpoint withUnassigned(List<Cell> cells) {
+        return new Checkpoint(mode, packs, cells, bestObjective, iterations, getRandom());
+    }
+
+    /**
+     * Returns the objective of the best arrangement.
+     *
+     * @return the bestObjective
+     */
+    public double getBestObjective() {
+        return bestObjective;
+    }
+
+    /**
+     * Returns the total number of steps performed by the checkpointed run.
+     *
+     * @return the iterations
+     */
+    public long getIterations() {
+        return iterations;
+    }
+
+    /**
+     * Returns a random number generator in the saved state.
+     *
+     * @return a new generator
+     */
+    public SeededRandom getRandom() {
+        return new SeededRandom(seed, gamma);
+    }
+}
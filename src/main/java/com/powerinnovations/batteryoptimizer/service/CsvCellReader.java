@@ -0,0 +1,336 @@
+package com.powerinnovations.batteryoptimizer.service;
+
+import com.powerinnovations.batteryoptimizer.model.CellLot;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads cell_ID,cell_value CSV data straight into a CellLot. The file is memory mapped in windows
+ * and parsed byte by byte, so no per-row String or record objects are created. Columns are located
+ * by the header row, may appear in any order alongside other columns, and may be quoted.
+ *
+ * Impedances written with no more than 15 significant digits (which covers tester output) are
+ * converted exactly without a String; anything else falls back to Double.parseDouble.
+ *
+ * @author robbi.mount
+ */
+public class CsvCellReader {
+
+    public static final String ID_COLUMN = "cell_ID";
+    public static final String VALUE_COLUMN = "cell_value";
+
+    private static final long WINDOW = 1L << 30; //Bytes mapped at a time by default.
+    private static final long PROGRESS_STEP = 1L << 22; //Bytes between progress updates.
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+    private final long window;
+    private int idColumn = -1;
+    private int valueColumn = -1;
+    private long line;
+
+    private ProgressListener listener;
+    private long size;
+    private long windowStart; //File offset of the window being parsed.
+    private long nextProgress;
+
+    //Field located by the last call to field(), and whether it holds escaped "" quotes.
+    private int fieldStart;
+    private int fieldEnd;
+    private boolean fieldEscaped;
+
+    /**
+     * Reads a CSV file into a new CellLot.
+     *
+     * @param csvFile a file object containing RFC-4180 CSV data with cell_ID and cell_value
+     * columns.
+     * @param listener receives the number of bytes read so far, or null.
+     * @return the lot of cells, in file order.
+     * @throws IOException thrown in the event of an IO error.
+     * @throws IllegalArgumentException thrown if the header row lacks a required column.
+     * @throws NumberFormatException thrown if a cell_value is not a number.
+     */
+    public static CellLot read(File csvFile, ProgressListener listener) throws IOException, IllegalArgumentException {
+        return read(csvFile, listener, WINDOW);
+    }
+
+    /**
+     * Reads a CSV file into a new CellLot, mapping at most window bytes at a time.
+     */
+    static CellLot read(File csvFile, ProgressListener listener, long window) throws IOException {
+        return new CsvCellReader(window).parse(csvFile, listener);
+    }
+
+    private CsvCellReader(long window) {
+        this.window = window;
+    }
+
+    private CellLot parse(File csvFile, ProgressListener listener) throws IOException {
+        try (FileChannel channel = FileChannel.open(csvFile.toPath(), StandardOpenOption.READ)) {
+            size = channel.size();
+            this.listener = listener;
+            nextProgress = PROGRESS_STEP;
+            CellLot lot = new CellLot((int) Math.min(Integer.MAX_VALUE - 16, size / 16));
+            long position = 0;
+            while (position < size) {
+                long length = Math.min(window, size - position);
+                boolean last = position + length == size;
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                windowStart = position;
+                int consumed = parseWindow(buffer, (int) length, last, lot, position == 0);
+                if (consumed == 0) {
+                    throw new IOException("Line " + (line + 1) + " is longer than " + window + " bytes.");
+                }
+                position += consumed;
+            }
+            if (listener != null) {
+                listener.progress(size, size);
+            }
+            if (idColumn < 0) {
+                throw new IllegalArgumentException("The CSV file has no header row.");
+            }
+            return lot;
+        }
+    }
+
+    /**
+     * Parses the complete lines of a window, reporting progress every PROGRESS_STEP bytes.
+     *
+     * @return the number of bytes consumed, which stops at the last complete line unless this is
+     * the last window of the file.
+     */
+    private int parseWindow(MappedByteBuffer buffer, int length, boolean last, CellLot lot, boolean first) {
+        int pos = 0;
+        if (first && length >= 3 && (buffer.get(0) & 0xFF) == 0xEF && (buffer.get(1) & 0xFF) == 0xBB
+                && (buffer.get(2) & 0xFF) == 0xBF) {
+            pos = 3; //Skip the UTF-8 byte order mark.
+        }
+        while (pos < length) {
+            int end = pos;
+            boolean quoted = false;
+            while (end < length && (quoted || (buffer.get(end) != '\n' && buffer.get(end) != '\r'))) {
+                if (buffer.get(end) == '"') {
+                    quoted = !quoted;
+                }
+                end++;
+            }
+            if (end == length && !last) {
+                break;
+            }
+            line++;
+            if (end > pos) {
+                if (idColumn < 0) {
+                    readHeader(buffer, pos, end);
+                } else {
+                    readRow(buffer, pos, end, lot);
+                }
+            }
+            pos = end;
+            while (pos < length && (buffer.get(pos) == '\n' || buffer.get(pos) == '\r')) {
+                pos++;
+            }
+            if (listener != null && windowStart + pos >= nextProgress && windowStart + pos < size) {
+                listener.progress(windowStart + pos, size);
+                nextProgress = windowStart + pos + PROGRESS_STEP;
+            }
+        }
+        return pos;
+    }
+
+    private void readHeader(MappedByteBuffer buffer, int start, int end) {
+        int column = 0;
+        int pos = start;
+        while (pos <= end) {
+            pos = field(buffer, pos, end);
+            String name = new String(fieldBytes(buffer), StandardCharsets.UTF_8).trim();
+            if (name.equals(ID_COLUMN)) {
+                idColumn = column;
+            } else if (name.equals(VALUE_COLUMN)) {
+                valueColumn = column;
+            }
+            column++;
+        }
+        if (idColumn < 0 || valueColumn < 0) {
+            throw new IllegalArgumentException("The CSV header must contain " + ID_COLUMN + " and " + VALUE_COLUMN + " columns.");
+        }
+    }
+
+    private void readRow(MappedByteBuffer buffer, int start, int end, CellLot lot) {
+        int idStart = -1;
+        int idEnd = -1;
+        byte[] escapedId = null;
+        double value = Double.NaN;
+        boolean found = false;
+        int column = 0;
+        int pos = start;
+        while (pos <= end && column <= Math.max(idColumn, valueColumn)) {
+            pos = field(buffer, pos, end);
+            if (column == idColumn) {
+                idStart = fieldStart;
+                idEnd = fieldEnd;
+                escapedId = fieldEscaped ? fieldBytes(buffer) : null;
+            } else if (column == valueColumn) {
+                value = parseDouble(buffer, fieldStart, fieldEnd);
+                found = true;
+            }
+            column++;
+        }
+        if (idStart < 0 || !found) {
+            throw new IllegalArgumentException("Line " + line + " is missing the " + ID_COLUMN + " or " + VALUE_COLUMN + " field.");
+        }
+        if (escapedId != null) {
+            lot.add(escapedId, 0, escapedId.length, value);
+        } else {
+            lot.add(buffer, idStart, idEnd - idStart, value);
+        }
+    }
+
+    /**
+     * Locates the field starting at pos, with any surrounding quotes removed, in fieldStart and
+     * fieldEnd. A quoted field that contains escaped "" quotes sets fieldEscaped; fieldBytes()
+     * then returns its unescaped content.
+     *
+     * @return the position after the field's trailing comma.
+     */
+    private int field(MappedByteBuffer buffer, int pos, int end) {
+        fieldEscaped = false;
+        if (pos < end && buffer.get(pos) == '"') {
+            int close = pos + 1;
+            while (close < end && !(buffer.get(close) == '"' && (close + 1 >= end || buffer.get(close + 1) != '"'))) {
+                if (buffer.get(close) == '"') {
+                    fieldEscaped = true;
+                    close += 2;
+                } else {
+                    close++;
+                }
+            }
+            fieldStart = pos + 1;
+            fieldEnd = close;
+            pos = close + 1;
+            while (pos < end && buffer.get(pos) != ',') {
+                pos++;
+            }
+            return pos + 1;
+        }
+        int comma = pos;
+        while (comma < end && buffer.get(comma) != ',') {
+            comma++;
+        }
+        fieldStart = pos;
+        fieldEnd = comma;
+        return comma + 1;
+    }
+
+    /**
+     * Parses a decimal number. Numbers with up to 15 significant digits and a small exponent are
+     * exact products or quotients of two exactly representable doubles, which makes the result
+     * correctly rounded and identical to Double.parseDouble.
+     */
+    private double parseDouble(MappedByteBuffer buffer, int start, int end) {
+        while (start < end && buffer.get(start) == ' ') {
+            start++;
+        }
+        while (end > start && buffer.get(end - 1) == ' ') {
+            end--;
+        }
+        int pos = start;
+        boolean negative = false;
+        if (pos < end && (buffer.get(pos) == '-' || buffer.get(pos) == '+')) {
+            negative = buffer.get(pos) == '-';
+            pos++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean point = false;
+        boolean any = false;
+        for (; pos < end; pos++) {
+            byte b = buffer.get(pos);
+            if (b >= '0' && b <= '9') {
+                any = true;
+                if (mantissa == 0 && b == '0') {
+                    if (point) {
+                        scale--;
+                    }
+                    continue;
+                }
+                if (++digits > 15) {
+                    return slowParse(buffer, start, end);
+                }
+                mantissa = mantissa * 10 + (b - '0');
+                if (point) {
+                    scale--;
+                }
+            } else if (b == '.' && !point) {
+                point = true;
+            } else {
+                break;
+            }
+        }
+        if (pos < end && (buffer.get(pos) == 'e' || buffer.get(pos) == 'E')) {
+            pos++;
+            boolean negativeExponent = false;
+            if (pos < end && (buffer.get(pos) == '-' || buffer.get(pos) == '+')) {
+                negativeExponent = buffer.get(pos) == '-';
+                pos++;
+            }
+            int exponent = 0;
+            int exponentStart = pos;
+            for (; pos < end && buffer.get(pos) >= '0' && buffer.get(pos) <= '9' && exponent < 10000; pos++) {
+                exponent = exponent * 10 + (buffer.get(pos) - '0');
+            }
+            if (pos == exponentStart) {
+                return slowParse(buffer, start, end);
+            }
+            scale += negativeExponent ? -exponent : exponent;
+        }
+        if (!any || pos != end) {
+            return slowParse(buffer, start, end);
+        }
+        double value = mantissa;
+        if (mantissa != 0) {
+            if (scale < -22 || scale > 22) {
+                return slowParse(buffer, start, end);
+            }
+            value = scale < 0 ? value / POWERS_OF_TEN[-scale] : value * POWERS_OF_TEN[scale];
+        }
+        return negative ? -value : value;
+    }
+
+    private double slowParse(MappedByteBuffer buffer, int start, int end) {
+        return Double.parseDouble(new String(bytes(buffer, start, end), StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Returns the bytes of the field located by the last call to field(), with escaped "" quotes
+     * turned back into single quotes.
+     */
+    private byte[] fieldBytes(MappedByteBuffer buffer) {
+        if (!fieldEscaped) {
+            return bytes(buffer, fieldStart, fieldEnd);
+        }
+        byte[] bytes = new byte[fieldEnd - fieldStart];
+        int length = 0;
+        for (int i = fieldStart; i < fieldEnd; i++) {
+            bytes[length++] = buffer.get(i);
+            if (buffer.get(i) == '"') {
+                i++; //Skip the second quote of the pair.
+            }
+        }
+        return Arrays.copyOf(bytes, length);
+    }
+
+    private static byte[] bytes(MappedByteBuffer buffer, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(start + i);
+        }
+        return bytes;
+    }
+}
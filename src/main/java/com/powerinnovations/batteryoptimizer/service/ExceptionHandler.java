@@ -2,13 +2,21 @@ package com.powerinnovations.batteryoptimizer.service;
 
 import com.powerinnovations.batteryoptimizer.view.GUI;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.lang.Thread.UncaughtExceptionHandler;
-import java.util.Calendar;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.FileHandler;
 import java.util.logging.Level;
+import java.util.logging.LogRecord;
 import java.util.logging.Logger;
 import java.util.logging.SimpleFormatter;
 
@@ -25,68 +33,80 @@ import java.util.logging.SimpleFormatter;
  * Caught exceptions are handled by calling "ExceptionHandler.logEvent(Level.SEVERE, e.getMessage(),
  * e);" in any catch statement where "e" equals the instance name of the throwable parameter.
  *
+ * Logging never blocks the caller. Events are placed on a bounded queue and written by a single
+ * background thread; if the queue is full the event is dropped and counted, and the count is logged
+ * once the writer catches up. The same event repeated within a minute is logged in full only the
+ * first few times; later repeats are counted and reported as a single summary line. Whatever is
+ * still queued when the program exits is written by a shutdown hook.
+ *
  * @author Robbi Mount
  */
 public class ExceptionHandler implements UncaughtExceptionHandler {
 
     private static final Logger LOG = Logger.getLogger(GUI.class.getName());
-    private static Calendar currentLog = null;
+    private static final int QUEUE_CAPACITY = 1024;
+    private static final int MAX_REPEATS = 5; //Repeats of one event logged in full per window.
+    private static final long REPEAT_WINDOW = 60000; //Milliseconds.
+    private static final int MAX_TRACKED = 1024; //Distinct events tracked for repeats.
+
+    private static final BlockingQueue<LogRecord> QUEUE = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private static final Map<String, Repeat> REPEATS = new ConcurrentHashMap<>();
+    private static final AtomicLong DROPPED = new AtomicLong();
+    private static final Object WRITE_LOCK = new Object();
+
+    //Guarded by WRITE_LOCK.
     private static FileHandler file = null;
+    private static long nextRoll = 0; //Start of the day after the one the current file is for.
+    private static boolean closed = false; //Set at exit; the file is then closed after every write.
+
+    static {
+        Thread writer = new Thread(ExceptionHandler::writeEvents, "event-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(ExceptionHandler::close, "event-log-flush"));
+    }
 
     public ExceptionHandler() {
 
     }
 
     /**
-     * This method logs the thrown exception. It first checks to see if the existing logger has a
-     * file handler object attached. It if doesn't, it creates one. If it does, the method checks to
-     * see if the date on the logger matches the current date. If it does, the event is logged. If
-     * it does not, a new handler is created for the new day and replaces the old one. The event is
-     * then logged.
+     * This method logs the thrown exception. The event is queued for the background writer and
+     * the method returns at once. An event repeated more than a few times within a minute is
+     * counted rather than queued; repeats are counted with atomic operations, so threads logging
+     * the same failure never wait for one another. Only the first report of a new event touches a
+     * map bin lock.
      *
      * @param level The level of severity of the logged event.
      * @param message The textual message to accompany the thrown event. A standalone message can
      * also be logged by providing null int he thrown parameter.
      * @param thrown The thrown exception object (prints the stack trace of the exception).
      */
-    @SuppressWarnings("ResultOfObjectAllocationIgnored")
-    public synchronized static void logEvent(Level level, String message, Throwable thrown) {
-        try {
-            if (LOG.getHandlers().length == 0) {
-                try {
-                    new FileInputStream("Logs");
-                } catch (Exception e) {
-                    File f = new File("Logs");
-                    f.mkdir();
-                } finally {
-                    currentLog = Calendar.getInstance();
-                    file = new FileHandler("Logs/eventLog" + String.valueOf(currentLog.get(Calendar.YEAR)) + String.valueOf(currentLog.get(Calendar.MONTH) + 1)
-                            + String.valueOf(currentLog.get(Calendar.DATE)) + ".txt", true);
-                    SimpleFormatter txt = new SimpleFormatter();
-                    file.setFormatter(txt);
-                    LOG.addHandler(file);
-                }
-            } else if (Calendar.getInstance().get(Calendar.YEAR) == currentLog.get(Calendar.YEAR) && Calendar.getInstance().get(Calendar.MONTH) == currentLog.get(Calendar.MONTH) && Calendar.getInstance().get(Calendar.DATE) == currentLog.get(Calendar.DATE)) {
-            } else {
-                try {
-                    LOG.removeHandler(file);
-                    new FileInputStream("Logs");
-                } catch (SecurityException | FileNotFoundException e) {
-                    File f = new File("Logs");
-                    f.mkdir();
-                } finally {
-                    currentLog = Calendar.getInstance();
-                    file = new FileHandler("Logs/eventLog" + String.valueOf(currentLog.get(Calendar.YEAR)) + String.valueOf(currentLog.get(Calendar.MONTH) + 1)
-                            + String.valueOf(currentLog.get(Calendar.DATE)) + ".txt", true);
-                    SimpleFormatter txt = new SimpleFormatter();
-                    file.setFormatter(txt);
-                    LOG.addHandler(file);
-                }
+    public static void logEvent(Level level, String message, Throwable thrown) {
+        String key = keyOf(level, message, thrown);
+        Repeat repeat = REPEATS.get(key);
+        if (repeat == null) {
+            Repeat added = new Repeat(level, message);
+            repeat = REPEATS.putIfAbsent(key, added);
+            if (repeat == null) {
+                repeat = added;
             }
-            LOG.logp(level, "", "", "-----------------------------------------------------\n" + message, thrown);
-        } catch (IOException | SecurityException e) {
-            Logger.getLogger(GUI.class.getName()).log(Level.SEVERE, e.getMessage(), e);
         }
+        int suppressed = 0;
+        long now = System.currentTimeMillis();
+        long windowStart = repeat.windowStart.get();
+        //One caller wins the reset of an expired window; counts racing with it may land in either window.
+        if (now - windowStart >= REPEAT_WINDOW && repeat.windowStart.compareAndSet(windowStart, now)) {
+            suppressed = repeat.suppressed.getAndSet(0);
+            repeat.count.set(0);
+        }
+        if (repeat.count.incrementAndGet() > MAX_REPEATS) {
+            repeat.suppressed.incrementAndGet();
+            return;
+        }
+        String text = suppressed > 0
+                ? message + "\n(repeated " + suppressed + " more times in the previous minute)" : message;
+        enqueue(level, text, thrown);
     }
 
     /**
@@ -102,4 +122,172 @@ public class ExceptionHandler implements UncaughtExceptionHandler {
         logEvent(Level.SEVERE, e.getMessage(), e);
     }
 
+    /**
+     * Writes every queued event, including a summary of any repeats still being counted, and
+     * closes the log file. Called by the shutdown hook; it may also be called before an orderly
+     * exit, and the file is simply reopened if anything is logged afterwards.
+     */
+    public static void flush() {
+        synchronized (WRITE_LOCK) {
+            sweepRepeats(Long.MAX_VALUE);
+            LogRecord record;
+            while ((record = QUEUE.poll()) != null) {
+                write(record);
+            }
+            reportDropped();
+            if (file != null) {
+                file.close();
+                file = null;
+            }
+        }
+    }
+
+    /**
+     * Flushes the log at exit. An event the writer took from the queue just before is still
+     * written, to a file that is reopened and closed again.
+     */
+    private static void close() {
+        synchronized (WRITE_LOCK) {
+            closed = true;
+            flush();
+        }
+    }
+
+    private static void enqueue(Level level, String message, Throwable thrown) {
+        LogRecord record = new LogRecord(level, "-----------------------------------------------------\n" + message);
+        record.setThrown(thrown);
+        record.setSourceClassName("");
+        record.setSourceMethodName("");
+        record.setLoggerName(LOG.getName());
+        if (!QUEUE.offer(record)) {
+            DROPPED.incrementAndGet();
+        }
+    }
+
+    /**
+     * The body of the background writer. Besides writing events it wakes once a second to report
+     * repeats whose window has closed.
+     */
+    private static void writeEvents() {
+        long nextSweep = 0;
+        while (true) {
+            try {
+                LogRecord record = QUEUE.poll(1, TimeUnit.SECONDS);
+                synchronized (WRITE_LOCK) {
+                    if (record != null) {
+                        write(record);
+                    }
+                    reportDropped();
+                }
+                long now = System.currentTimeMillis();
+                if (now >= nextSweep) {
+                    sweepRepeats(now);
+                    nextSweep = now + 1000;
+                }
+            } catch (InterruptedException ex) {
+                return;
+            } catch (RuntimeException ex) {
+                Logger.getLogger(GUI.class.getName()).log(Level.SEVERE, ex.getMessage(), ex);
+            }
+        }
+    }
+
+    /**
+     * Queues a summary for every event whose repeat window has closed with repeats suppressed, and
+     * forgets events that have gone quiet.
+     */
+    private static void sweepRepeats(long now) {
+        for (Iterator<Map.Entry<String, Repeat>> it = REPEATS.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<String, Repeat> entry = it.next();
+            Repeat repeat = entry.getValue();
+            long windowStart = repeat.windowStart.get();
+            if (now - windowStart < REPEAT_WINDOW) {
+                continue;
+            }
+            int suppressed = repeat.suppressed.getAndSet(0);
+            if (suppressed > 0) {
+                enqueue(repeat.level, "Suppressed " + suppressed + " repeats of: " + repeat.message, null);
+            } else if (now - windowStart >= 2 * REPEAT_WINDOW || REPEATS.size() > MAX_TRACKED) {
+                it.remove();
+            }
+        }
+    }
+
+    private static void reportDropped() {
+        long dropped = DROPPED.getAndSet(0);
+        if (dropped > 0) {
+            write(new LogRecord(Level.WARNING, "-----------------------------------------------------\n"
+                    + dropped + " events were dropped because the log queue was full."));
+        }
+    }
+
+    /**
+     * Writes one event, first rolling to a new file if the day has changed since the current file
+     * was opened. Checking the date costs one comparison of the clock against a precomputed time.
+     * The file handler is published to directly rather than added to the logger, so that it is
+     * not closed by the logging system's own shutdown hook while queued events are still being
+     * written. Must be called holding WRITE_LOCK.
+     */
+    private static void write(LogRecord record) {
+        if (!LOG.isLoggable(record.getLevel())) {
+            return;
+        }
+        try {
+            if (record.getMillis() >= nextRoll || file == null) {
+                roll();
+            }
+            file.publish(record);
+            LOG.log(record);
+            if (closed) {
+                file.close();
+                file = null;
+            }
+        } catch (IOException | SecurityException e) {
+            Logger.getLogger(GUI.class.getName()).log(Level.SEVERE, e.getMessage(), e);
+        }
+    }
+
+    private static void roll() throws IOException {
+        if (file != null) {
+            file.close();
+        }
+        new File("Logs").mkdirs();
+        ZoneId zone = ZoneId.systemDefault();
+        LocalDate today = LocalDate.now(zone);
+        file = new FileHandler("Logs/eventLog" + String.valueOf(today.getYear()) + String.valueOf(today.getMonthValue())
+                + String.valueOf(today.getDayOfMonth()) + ".txt", true);
+        SimpleFormatter txt = new SimpleFormatter();
+        file.setFormatter(txt);
+        nextRoll = today.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+    }
+
+    /**
+     * Identifies repeats of the same event: the same message from the same kind of exception
+     * thrown at the same place.
+     */
+    private static String keyOf(Level level, String message, Throwable thrown) {
+        if (thrown == null) {
+            return level.getName() + ':' + message;
+        }
+        StackTraceElement[] trace = thrown.getStackTrace();
+        return thrown.getClass().getName() + ':' + message + '@' + (trace.length > 0 ? trace[0] : "");
+    }
+
+    /**
+     * The repeat count of one event within the current window. Each suppressed repeat is taken by
+     * getAndSet(0), so it is reported exactly once, by either logEvent() or sweepRepeats().
+     */
+    private static final class Repeat {
+
+        private final Level level;
+        private final String message;
+        private final AtomicLong windowStart = new AtomicLong(Long.MIN_VALUE / 2);
+        private final AtomicInteger count = new AtomicInteger();
+        private final AtomicInteger suppressed = new AtomicInteger();
+
+        private Repeat(Level level, String message) {
+            this.level = level;
+            this.message = message;
+        }
+    }
 }
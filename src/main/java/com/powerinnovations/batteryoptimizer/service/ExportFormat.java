@@ -0,0 +1,61 @@
+package com.powerinnovations.batteryoptimizer.service;
+
+import java.io.File;
+import java.util.Locale;
+
+/**
+ * The file formats pack results can be exported to.
+ *
+ * @author robbi.mount
+ */
+public enum ExportFormat {
+
+    /**
+     * An Excel 2007+ workbook, streamed through SXSSF so that only a window of rows is ever held in
+     * memory.
+     */
+    XLSX("xlsx"),
+    /**
+     * A legacy Excel 97 workbook, limited to 65,535 packs.
+     */
+    XLS("xls"),
+    /**
+     * Comma separated values, one pack per line.
+     */
+    CSV("csv"),
+    /**
+     * A JSON object holding the seed of the run, or null, and an array with one object per pack.
+     */
+    JSON("json");
+
+    private final String extension;
+
+    private ExportFormat(String extension) {
+        this.extension = extension;
+    }
+
+    /**
+     * Returns the usual file name extension of the format.
+     *
+     * @return the extension, without the dot.
+     */
+    public String getExtension() {
+        return extension;
+    }
+
+    /**
+     * Returns the format matching the extension of a file name.
+     *
+     * @param file the file.
+     * @return the matching format, or XLSX if the extension is not recognised.
+     */
+    public static ExportFormat fromFile(File file) {
+        String name = file.getName().toLowerCase(Locale.ROOT);
+        for (ExportFormat format : values()) {
+            if (name.endsWith("." + format.extension)) {
+                return format;
+            }
+        }
+        return XLSX;
+    }
+}
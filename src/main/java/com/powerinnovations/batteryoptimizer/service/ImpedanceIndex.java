@@ -0,0 +1,129 @@
+package com.powerinnovations.batteryoptimizer.service;
+
+import java.util.Arrays;
+
+/**
+ * An index of every cell of a lot by impedance, for drawing cells whose impedance falls within a
+ * window. Cells keep their impedance as they move between packs, so the index is built once and
+ * never updated; the PackLayout tells where each cell currently is.
+ *
+ * The cells are held in ascending order of impedance, and the impedance range of the lot is cut
+ * into as many equal buckets as there are cells, each pointing at its first cell in that order.
+ * Finding the first cell at or above an impedance is a bucket lookup and a short scan, so drawing
+ * from a window takes constant time on any realistic lot.
+ *
+ * @author robbi.mount
+ */
+final class ImpedanceIndex {
+
+    private final int[] order; //Cell indices in ascending order of impedance.
+    private final double[] values; //The impedance of each cell in order.
+    private final int[] bucketStart; //The first position in order of each bucket, and a sentinel.
+    private final double low;
+    private final double scale; //Buckets per ohm.
+
+    /**
+     * Builds an index over the cells of a layout.
+     *
+     * @param layout the layout.
+     */
+    ImpedanceIndex(PackLayout layout) {
+        int n = layout.getCellCount();
+        this.values = new double[n];
+        for (int c = 0; c < n; c++) {
+            values[c] = layout.getCellImpedance(c);
+        }
+        Arrays.sort(values);
+        //Place each cell at the first free position of its impedance; equal cells stay in index order.
+        this.order = new int[n];
+        int[] placed = new int[n];
+        for (int c = 0; c < n; c++) {
+            int first = firstAtLeast(layout.getCellImpedance(c));
+            order[first + placed[first]++] = c;
+        }
+
+        this.low = values[0];
+        double range = values[n - 1] - low;
+        this.scale = range > 0 ? n / range : 0;
+        this.bucketStart = new int[n + 1];
+        int position = 0;
+        for (int b = 0; b < n; b++) {
+            while (position < n && bucketOf(values[position]) < b) {
+                position++;
+            }
+            bucketStart[b] = position;
+        }
+        bucketStart[n] = n;
+    }
+
+    /**
+     * Returns the number of cells indexed.
+     *
+     * @return the cell count.
+     */
+    int size() {
+        return order.length;
+    }
+
+    /**
+     * Returns the position in impedance order of the first cell whose impedance is at least the
+     * given value.
+     *
+     * @param impedance the value.
+     * @return the position, or size() if every cell is lower.
+     */
+    int lowerBound(double impedance) {
+        int position = bucketStart[bucketOf(impedance)];
+        while (position < values.length && values[position] < impedance) {
+            position++;
+        }
+        return position;
+    }
+
+    /**
+     * Returns the position in impedance order of the first cell whose impedance is above the given
+     * value.
+     *
+     * @param impedance the value.
+     * @return the position, or size() if no cell is higher.
+     */
+    int upperBound(double impedance) {
+        int position = bucketStart[bucketOf(impedance)];
+        while (position < values.length && values[position] <= impedance) {
+            position++;
+        }
+        return position;
+    }
+
+    /**
+     * Returns the cell at a position in impedance order.
+     *
+     * @param position the position.
+     * @return the cell index.
+     */
+    int cellAt(int position) {
+        return order[position];
+    }
+
+    private int firstAtLeast(double impedance) {
+        int lo = 0;
+        int hi = values.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (values[mid] < impedance) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private int bucketOf(double impedance) {
+        double bucket = (impedance - low) * scale;
+        if (!(bucket > 0)) {
+            return 0;
+        }
+        return bucket >= order.length ? order.length - 1 : (int) bucket;
+    }
+}
@@ -0,0 +1,29 @@
+package com.powerinnovations.batteryoptimizer.service;
+
+/**
+ * The stages an OptimizationJob passes through.
+ *
+ * @author robbi.mount
+ */
+public enum JobState {
+    /**
+     * Waiting for one of the service's job slots.
+     */
+    QUEUED,
+    /**
+     * The lot is being optimized.
+     */
+    RUNNING,
+    /**
+     * The run stopped on its StoppingRule and the result is available.
+     */
+    FINISHED,
+    /**
+     * The job was cancelled, before it started or while it ran.
+     */
+    CANCELLED,
+    /**
+     * The run stopped on an error, which completes the result instead.
+     */
+    FAILED
+}
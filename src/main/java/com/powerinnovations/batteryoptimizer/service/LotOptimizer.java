@@ -0,0 +1,631 @@
+package com.powerinnovations.batteryoptimizer.service;
+
+import com.powerinnovations.batteryoptimizer.model.Pack;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The optimization engine behind PackUtils. It works on a PackLayout rather than on Pack and Cell
+ * objects, so a single optimization step performs no allocation once the engine is constructed.
+ *
+ * Each step makes one Move and is scored by an Objective, by default the average spread of the lot
+ * in truly random mode and the highest spread otherwise. Only the packs involved are rescored. In
+ * truly random mode the packs are chosen at random; otherwise the pack with the highest score is
+ * always one of them. A step that does not improve the objective is undone. Which kind of move a
+ * step makes is left to a MoveSelector, which favours whichever kind has lately improved the
+ * objective the most for the work it took: single swaps early on, and the more thorough moves once
+ * most random swaps fail.
+ *
+ * Every choice the optimizer makes is drawn from its SeededRandom, so an optimizer built from the
+ * same packs and the same seed makes exactly the same steps.
+ *
+ * In simulated annealing mode the worst pack is only chosen half of the time and a step that
+ * makes the objective worse is still kept with a
+ * probability that falls with the temperature of the AnnealingSchedule. Because the current
+ * arrangement may then be worse than one seen earlier, the best arrangement is kept in a second
+ * layout and is the one reported.
+ *
+ * @author robbi.mount
+ */
+public class LotOptimizer {
+
+    private static final int BEST_OF_K_SAMPLES = 8; //Swaps tried by each BEST_OF_K move.
+    private static final int REPARTITION_CANDIDATES = 4; //Partners considered by each REPARTITION move.
+    private static final int GUIDED_DRAWS = 8; //Partners drawn from the window by each GUIDED_SWAP.
+
+    private final PackLayout layout;
+    private final SpreadEvaluator evaluator;
+    private final SeededRandom random;
+    private final OptimizationMode mode;
+    private final Objective objective;
+    private final MoveSelector selector;
+    private final ImpedanceIndex index; //Only built for GUIDED_SWAP moves.
+    private long iterations;
+    private long accepted;
+    private double gain; //Improvement in objective made by the current step.
+
+    //Scratch space for re-partitioning two packs.
+    private final int[] pairSlots;
+    private final double[] pairImpedance;
+
+    //Simulated annealing state.
+    private final AnnealingSchedule schedule;
+    private PackLayout bestLayout;
+    private double bestObjective;
+    private double cycleTemperature;
+    private double finalTemperature;
+    private long cycleStep;
+    private int reheatsLeft;
+
+    /**
+     * Constructs an optimizer over a copy of the given pack arrangement.
+     *
+     * @param packList the list of Pack objects to optimize.
+     * @param trulyRandom the method of optimization; true = trulyRandom, false = use highest
+     * impedance spread.
+     */
+    public LotOptimizer(List<Pack> packList, boolean trulyRandom) {
+        this(packList, OptimizationMode.fromTrulyRandom(trulyRandom), new AnnealingSchedule(), new SeededRandom());
+    }
+
+    /**
+     * Constructs an optimizer over a copy of the given pack arrangement which draws from its own
+     * random number source.
+     *
+     * @param packList the list of Pack objects to optimize.
+     * @param mode the method of optimization.
+     * @param schedule the temperature schedule, used in simulated annealing mode only.
+     * @param random the random number source, which must not be shared with another thread.
+     */
+    public LotOptimizer(List<Pack> packList, OptimizationMode mode, AnnealingSchedule schedule, SeededRandom random) {
+        this(packList, mode, StandardObjective.forMode(mode), schedule, random);
+    }
+
+    /**
+     * Constructs an optimizer over a copy of the given pack arrangement which minimizes the given
+     * objective using every kind of move.
+     *
+     * @param packList the list of Pack objects to optimize.
+     * @param mode the method of optimization.
+     * @param objective the metric to minimize.
+     * @param schedule the temperature schedule, used in simulated annealing mode only.
+     * @param random the random number source, which must not be shared with another thread.
+     */
+    public LotOptimizer(List<Pack> packList, OptimizationMode mode, Objective objective, AnnealingSchedule schedule,
+            SeededRandom random) {
+        this(packList, mode, objective, EnumSet.allOf(Move.class), schedule, random);
+    }
+
+    /**
+     * Constructs an optimizer over a copy of the given pack arrangement which minimizes the given
+     * objective using the given kinds of move.
+     *
+     * @param packList the list of Pack objects to optimize.
+     * @param mode the method of optimization.
+     * @param objective the metric to minimize.
+     * @param moves the kinds of move to make; EnumSet.of(Move.SWAP) makes only single swaps.
+     * @param schedule the temperature schedule, used in simulated annealing mode only.
+     * @param random the random number source, which must not be shared with another thread.
+     */
+    public LotOptimizer(List<Pack> packList, OptimizationMode mode, Objective objective, Set<Move> moves,
+            AnnealingSchedule schedule, SeededRandom random) {
+        if (packList.size() < 2) {
+            throw new IllegalArgumentException("At least two packs are required to optimize.");
+        }
+        this.layout = new PackLayout(packList);
+        this.evaluator = new SpreadEvaluator(layout.getPackCount());
+        this.random = random;
+        this.mode = mode;
+        this.objective = objective;
+        this.selector = new MoveSelector(moves, random, this::getWork);
+        this.index = moves.contains(Move.GUIDED_SWAP) ? new ImpedanceIndex(layout) : null;
+        this.pairSlots = new int[2 * layout.getCellsPerPack()];
+        this.pairImpedance = new double[pairSlots.length];
+        this.schedule = schedule;
+        evaluate();
+        startSchedule();
+    }
+
+    /**
+     * Discards the current arrangement and restarts the search from a random one.
+     */
+    public void restart() {
+        layout.shuffle(random);
+        evaluate();
+        startSchedule();
+    }
+
+    /**
+     * Performs a single optimization step.
+     *
+     * @return true if the step improved on the best arrangement found so far.
+     */
+    public boolean step() {
+        iterations++;
+        gain = 0;
+        boolean improved;
+        switch (selector.next()) {
+            case THREE_CYCLE:
+                improved = threeCycle();
+                break;
+            case BEST_OF_K:
+                improved = bestOfK();
+                break;
+            case REPARTITION:
+                improved = repartition();
+                break;
+            case GUIDED_SWAP:
+                improved = guidedSwap();
+                break;
+            default:
+                improved = swap();
+        }
+        selector.record(gain);
+        return improved;
+    }
+
+    /**
+     * Returns the current value of the metric being minimized.
+     *
+     * @return the objective of the current arrangement.
+     */
+    public double getObjective() {
+        return objective.evaluate(evaluator);
+    }
+
+    /**
+     * Returns the value of the metric for the best arrangement found so far. This only differs from
+     * getObjective() in simulated annealing mode.
+     *
+     * @return the best objective.
+     */
+    public double getBestObjective() {
+        return bestLayout == null ? getObjective() : bestObjective;
+    }
+
+    /**
+     * Returns the highest pack spread of the best arrangement found so far. Unless the packs are
+     * scored by spread and the current arrangement is the best, this costs one pass over the
+     * packs.
+     *
+     * @return the highest spread.
+     */
+    public double getBestHigh() {
+        if (bestLayout == null && StandardObjective.ranksBySpread(objective)) {
+            return evaluator.getHigh();
+        }
+        PackLayout best = bestLayout == null ? layout : bestLayout;
+        double high = 0;
+        for (int p = 0; p < best.getPackCount(); p++) {
+            high = Math.max(high, best.getSpread(p));
+        }
+        return high;
+    }
+
+    /**
+     * Returns the average pack spread of the best arrangement found so far. Unless the packs are
+     * scored by spread and the current arrangement is the best, this costs one pass over the
+     * packs.
+     *
+     * @return the average spread.
+     */
+    public double getBestAverage() {
+        if (bestLayout == null && StandardObjective.ranksBySpread(objective)) {
+            return evaluator.getAverage();
+        }
+        PackLayout best = bestLayout == null ? layout : bestLayout;
+        double sum = 0;
+        for (int p = 0; p < best.getPackCount(); p++) {
+            sum += best.getSpread(p);
+        }
+        return sum / best.getPackCount();
+    }
+
+    /**
+     * Returns whether the annealing schedule, including every reheat, has run its course. The
+     * hill-climbing modes have no schedule and are always cooled.
+     *
+     * @return true if the search is at its final temperature.
+     */
+    public boolean isCooled() {
+        return bestLayout == null || (reheatsLeft == 0 && cycleStep >= schedule.getCycleLength());
+    }
+
+    /**
+     * Returns the number of steps performed so far.
+     *
+     * @return the iteration count.
+     */
+    public long getIterations() {
+        return iterations;
+    }
+
+    /**
+     * Returns the number of steps that were kept rather than undone.
+     *
+     * @return the accepted step count.
+     */
+    public long getAcceptedSteps() {
+        return accepted;
+    }
+
+    /**
+     * Returns a copy of the random number source in its current state, for checkpointing.
+     *
+     * @return a new generator that continues this optimizer's sequence.
+     */
+    public SeededRandom getRandomState() {
+        return random.copy();
+    }
+
+    /**
+     * Builds a list of Pack objects reflecting the best arrangement found so far.
+     *
+     * @return a new list of Pack objects.
+     */
+    public List<Pack> toPacks() {
+        return bestLayout == null ? layout.toPacks() : bestLayout.toPacks();
+    }
+
+    /**
+     * Builds a list of Pack objects reflecting the best arrangement found so far, in ascending
+     * order of impedance spread.
+     *
+     * @return a new, sorted list of Pack objects.
+     */
+    public List<Pack> toSortedPacks() {
+        if (bestLayout == null && StandardObjective.ranksBySpread(objective)) {
+            return layout.toPacks(evaluator.getSortedOrder());
+        }
+        List<Pack> packs = toPacks();
+        packs.sort((p1, p2) -> p1.compareTo(p2));
+        return packs;
+    }
+
+    /**
+     * Exchanges one random cell between two packs.
+     */
+    private boolean swap() {
+        int packA = choosePack();
+        int packB = otherPack(packA, -1);
+        double baseline = getObjective();
+        layout.swap(randomSlot(packA), randomSlot(packB));
+        return settle(baseline, packA, packB);
+    }
+
+    /**
+     * Rotates one random cell each between three packs: the cell of the first pack moves to the
+     * second, that of the second to the third and that of the third to the first.
+     */
+    private boolean threeCycle() {
+        if (layout.getPackCount() < 3) {
+            return swap();
+        }
+        int packA = choosePack();
+        int packB = otherPack(packA, -1);
+        int packC = otherPack(packA, packB);
+        double baseline = getObjective();
+        int slotA = randomSlot(packA);
+        layout.swap(slotA, randomSlot(packB));
+        layout.swapAlso(slotA, randomSlot(packC));
+
+        //Score the three packs in the evaluator; the old scores only go back if the step is undone.
+        double oldA = evaluator.getSpread(packA);
+        double oldB = evaluator.getSpread(packB);
+        double oldC = evaluator.getSpread(packC);
+        evaluator.setSpread(packA, objective.score(layout, packA));
+        evaluator.setSpread(packB, objective.score(layout, packB));
+        evaluator.setSpread(packC, objective.score(layout, packC));
+        double result = getObjective();
+
+        if (!acceptable(baseline, result)) {
+            evaluator.setSpread(packA, oldA);
+            evaluator.setSpread(packB, oldB);
+            evaluator.setSpread(packC, oldC);
+            layout.undo();
+            return false;
+        }
+        return keep(baseline, result);
+    }
+
+    /**
+     * Tries BEST_OF_K_SAMPLES random swaps between one cell of the chosen pack and a cell of some
+     * other pack, and makes the one that leaves the lot with the lowest objective.
+     */
+    private boolean bestOfK() {
+        int packA = choosePack();
+        double baseline = getObjective();
+        int bestA = -1;
+        int bestB = -1;
+        double best = Double.MAX_VALUE;
+        for (int k = 0; k < BEST_OF_K_SAMPLES; k++) {
+            int packB = otherPack(packA, -1);
+            int slotA = randomSlot(packA);
+            int slotB = randomSlot(packB);
+            layout.swap(slotA, slotB);
+            double result = objective.evaluateSwap(evaluator, packA, objective.score(layout, packA),
+                    packB, objective.score(layout, packB));
+            layout.undo();
+            if (result < best) {
+                best = result;
+                bestA = slotA;
+                bestB = slotB;
+            }
+        }
+        layout.swap(bestA, bestB);
+        return settle(baseline, packA, layout.packOf(bestB));
+    }
+
+    /**
+     * Pools the cells of the chosen pack and of the pack nearest it in average impedance among a
+     * few random candidates, and splits them so that one pack holds the lower-impedance half. The
+     * half that is already mostly in a pack stays there, to keep the number of exchanges down.
+     */
+    private boolean repartition() {
+        int cellsPerPack = layout.getCellsPerPack();
+        int packA = choosePack();
+        double sum = layout.getSum(packA); //Every pack holds as many cells, so sums order as averages do.
+        int packB = otherPack(packA, -1);
+        for (int k = 1; k < REPARTITION_CANDIDATES; k++) {
+            int candidate = otherPack(packA, -1);
+            if (Math.abs(layout.getSum(candidate) - sum) < Math.abs(layout.getSum(packB) - sum)) {
+                packB = candidate;
+            }
+        }
+
+        //Order the slots of both packs by impedance; the slots are few, so insertion sort it is.
+        for (int i = 0; i < pairSlots.length; i++) {
+            int slot = (i < cellsPerPack ? packA : packB) * cellsPerPack + i % cellsPerPack;
+            double impedance = layout.getSlotImpedance(slot);
+            int j = i;
+            for (; j > 0 && pairImpedance[j - 1] > impedance; j--) {
+                pairSlots[j] = pairSlots[j - 1];
+                pairImpedance[j] = pairImpedance[j - 1];
+            }
+            pairSlots[j] = slot;
+            pairImpedance[j] = impedance;
+        }
+
+        //The lower half goes to whichever pack already holds most of it.
+        int lowInA = 0;
+        for (int i = 0; i < cellsPerPack; i++) {
+            if (layout.packOf(pairSlots[i]) == packA) {
+                lowInA++;
+            }
+        }
+        int lowPack = 2 * lowInA >= cellsPerPack ? packA : packB;
+        double baseline = getObjective();
+        int lowIndex = 0;
+        int highIndex = cellsPerPack;
+        boolean started = false;
+        while (true) {
+            while (lowIndex < cellsPerPack && layout.packOf(pairSlots[lowIndex]) == lowPack) {
+                lowIndex++;
+            }
+            while (highIndex < pairSlots.length && layout.packOf(pairSlots[highIndex]) != lowPack) {
+                highIndex++;
+            }
+            if (lowIndex == cellsPerPack) {
+                break;
+            }
+            if (started) {
+                layout.swapAlso(pairSlots[lowIndex++], pairSlots[highIndex++]);
+            } else {
+                layout.swap(pairSlots[lowIndex++], pairSlots[highIndex++]);
+                started = true;
+            }
+        }
+        return started && settle(baseline, packA, packB);
+    }
+
+    /**
+     * Exchanges the highest or the lowest cell of the chosen pack for a cell of another pack that
+     * narrows the chosen pack. Partners are drawn from the ImpedanceIndex: from within the range of
+     * the pack's other cells if any other pack has a cell there, which narrows the pack to that
+     * range, otherwise from anywhere inside the current range of the pack. Partners are drawn for
+     * both ends of the pack, the end that stands further from the rest first, and the one whose
+     * pack already spans the cell it would receive, or comes nearest to spanning it, is taken, so
+     * that the partner pack widens as little as possible. An extreme cell that no other pack can
+     * take is thereby left where it is, and the pack narrows around it from the other end. The
+     * chosen pack's own few cells are simply scanned.
+     */
+    private boolean guidedSwap() {
+        int cellsPerPack = layout.getCellsPerPack();
+        int packA = choosePack();
+        int lowSlot = -1;
+        int highSlot = -1;
+        double low = Double.MAX_VALUE;
+        double secondLow = Double.MAX_VALUE;
+        double high = -Double.MAX_VALUE;
+        double secondHigh = -Double.MAX_VALUE;
+        for (int s = packA * cellsPerPack; s < (packA + 1) * cellsPerPack; s++) {
+            double impedance = layout.getSlotImpedance(s);
+            if (impedance < low) {
+                secondLow = low;
+                low = impedance;
+                lowSlot = s;
+            } else if (impedance < secondLow) {
+                secondLow = impedance;
+            }
+            if (impedance > high) {
+                secondHigh = high;
+                high = impedance;
+                highSlot = s;
+            } else if (impedance > secondHigh) {
+                secondHigh = impedance;
+            }
+        }
+
+        boolean highFirst = high - secondHigh >= secondLow - low;
+        int bestOut = -1;
+        int bestIn = -1;
+        double bestGrowth = Double.MAX_VALUE;
+        for (int end = 0; end < 2 && bestGrowth > 0; end++) {
+            boolean replaceHigh = highFirst == (end == 0);
+            double outlier = replaceHigh ? high : low;
+            int start = index.lowerBound(replaceHigh ? low : secondLow);
+            int stop = index.upperBound(replaceHigh ? secondHigh : high);
+            if (stop - start < cellsPerPack) {
+                //Only the pack's own cells lie in the range of the others; anything short of the outlier will do.
+                start = replaceHigh ? start : index.upperBound(low);
+                stop = replaceHigh ? index.lowerBound(high) : stop;
+            }
+            for (int draw = 0; draw < GUIDED_DRAWS / 2 && stop > start && bestGrowth > 0; draw++) {
+                int slotB = layout.slotOf(index.cellAt(start + random.nextInt(stop - start)));
+                int packB = layout.packOf(slotB);
+                double growth = Math.max(0, Math.max(outlier - layout.getHigh(packB), layout.getLow(packB) - outlier));
+                if (packB != packA && growth < bestGrowth) {
+                    bestGrowth = growth;
+                    bestOut = replaceHigh ? highSlot : lowSlot;
+                    bestIn = slotB;
+                }
+            }
+        }
+        if (bestIn < 0) {
+            return false;
+        }
+        double baseline = getObjective();
+        layout.swap(bestOut, bestIn);
+        return settle(baseline, packA, layout.packOf(bestIn));
+    }
+
+    /**
+     * Keeps or undoes the move just made to the layout, which changed two packs.
+     *
+     * @param baseline the objective before the move.
+     * @param packA the index of the first pack changed.
+     * @param packB the index of the second pack changed.
+     * @return true if the move improved on the best arrangement found so far.
+     */
+    private boolean settle(double baseline, int packA, int packB) {
+        double scoreA = objective.score(layout, packA);
+        double scoreB = objective.score(layout, packB);
+        double result = objective.evaluateSwap(evaluator, packA, scoreA, packB, scoreB);
+        if (!acceptable(baseline, result)) {
+            layout.undo();
+            return false;
+        }
+        evaluator.setSpread(packA, scoreA);
+        evaluator.setSpread(packB, scoreB);
+        return keep(baseline, result);
+    }
+
+    /**
+     * Decides whether to keep a move: only if it improves the objective, or, when annealing, if it
+     * wins the draw.
+     */
+    private boolean acceptable(double baseline, double result) {
+        return mode == OptimizationMode.SIMULATED_ANNEALING ? accept(result - baseline) : result < baseline;
+    }
+
+    /**
+     * Accounts for a move that was kept.
+     *
+     * @return true if the move improved on the best arrangement found so far.
+     */
+    private boolean keep(double baseline, double result) {
+        accepted++;
+        gain = baseline - result;
+        if (bestLayout != null) {
+            if (!(result < bestObjective)) {
+                return false;
+            }
+            bestLayout.copyFrom(layout);
+            bestObjective = result;
+        }
+        return true;
+    }
+
+    /**
+     * Chooses the first pack of a move: at random in truly random mode and half of the time when
+     * annealing, otherwise the pack with the highest score.
+     */
+    private int choosePack() {
+        return mode == OptimizationMode.TRULY_RANDOM
+                || (mode == OptimizationMode.SIMULATED_ANNEALING && random.nextBoolean())
+                ? random.nextInt(layout.getPackCount()) : evaluator.getHighestPack();
+    }
+
+    /**
+     * Chooses a random pack other than one or two given packs.
+     *
+     * @param first a pack to avoid.
+     * @param second a second pack to avoid, greater or less than first, or -1 for none.
+     */
+    private int otherPack(int first, int second) {
+        int low = second < 0 ? first : Math.min(first, second);
+        int high = second < 0 ? -1 : Math.max(first, second);
+        int pack = random.nextInt(layout.getPackCount() - (second < 0 ? 1 : 2));
+        if (pack >= low) {
+            pack++;
+        }
+        if (high >= 0 && pack >= high) {
+            pack++;
+        }
+        return pack;
+    }
+
+    /**
+     * Returns the work done so far, as counted by the layouts and the evaluator.
+     */
+    private long getWork() {
+        return layout.getWork() + evaluator.getWork() + (bestLayout == null ? 0 : bestLayout.getWork());
+    }
+
+    private int randomSlot(int pack) {
+        int cellsPerPack = layout.getCellsPerPack();
+        return pack * cellsPerPack + random.nextInt(cellsPerPack);
+    }
+
+    /**
+     * Decides whether to keep an annealing step under the Metropolis criterion and advances the
+     * schedule. When a cycle ends with a reheat left, the step is dropped and the search returns to
+     * the best arrangement at the next, reheated, starting temperature.
+     *
+     * @param delta the change in objective the step would cause.
+     * @return true to keep the step.
+     */
+    private boolean accept(double delta) {
+        double temperature = schedule.temperature(cycleStep++, cycleTemperature, finalTemperature);
+        if (cycleStep >= schedule.getCycleLength() && reheatsLeft > 0) {
+            reheatsLeft--;
+            cycleStep = 0;
+            cycleTemperature *= schedule.getReheatFactor();
+            layout.copyFrom(bestLayout);
+            evaluate();
+            return false;
+        }
+        return delta <= 0 || random.nextDouble() < Math.exp(-delta / temperature);
+    }
+
+    /**
+     * Loads the score of every pack of the current arrangement into the evaluator.
+     */
+    private void evaluate() {
+        for (int p = 0; p < layout.getPackCount(); p++) {
+            evaluator.setSpread(p, objective.score(layout, p));
+        }
+    }
+
+    /**
+     * Starts the annealing schedule from the current arrangement. Temperatures are scaled to its
+     * objective.
+     */
+    private void startSchedule() {
+        if (mode != OptimizationMode.SIMULATED_ANNEALING) {
+            return;
+        }
+        double start = getObjective();
+        if (bestLayout == null) {
+            bestLayout = new PackLayout(layout);
+        } else {
+            bestLayout.copyFrom(layout);
+        }
+        bestObjective = start;
+        cycleTemperature = schedule.getInitialTemperature() * start;
+        finalTemperature = schedule.getFinalTemperature() * start;
+        cycleStep = 0;
+        reheatsLeft = schedule.getReheats();
+    }
+}
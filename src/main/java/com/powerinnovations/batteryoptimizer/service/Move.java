@@ -0,0 +1,37 @@
+package com.powerinnovations.batteryoptimizer.service;
+
+/**
+ * The kinds of move the LotOptimizer makes. By default it uses all of them and learns as it runs
+ * which pay off best for the lot at hand; see MoveSelector.
+ *
+ * @author robbi.mount
+ */
+public enum Move {
+
+    /**
+     * Exchanges one random cell between two packs. Cheap, and effective while the lot is far from
+     * optimized.
+     */
+    SWAP,
+    /**
+     * Rotates one cell each between three packs, reaching arrangements that no single swap that
+     * improves the objective can.
+     */
+    THREE_CYCLE,
+    /**
+     * Tries several random swaps between the worst pack and other packs and keeps only the best
+     * of them.
+     */
+    BEST_OF_K,
+    /**
+     * Pools the cells of the worst pack and the pack nearest it in average impedance, and splits
+     * them again so that one pack holds the lower half and the other the upper half.
+     */
+    REPARTITION,
+    /**
+     * Replaces the outlying cell of the worst pack with a cell, drawn from an index of the lot by
+     * impedance, that lies within the range of the pack's other cells. Unlike a random swap, it
+     * almost always narrows the worst pack, so far fewer attempts are wasted on a large lot.
+     */
+    GUIDED_SWAP
+}
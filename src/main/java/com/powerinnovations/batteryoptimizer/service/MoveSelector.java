@@ -0,0 +1,105 @@
+package com.powerinnovations.batteryoptimizer.service;
+
+import java.util.Set;
+import java.util.function.LongSupplier;
+
+/**
+ * Chooses which kind of move the LotOptimizer makes next, as a multi-armed bandit. Moves are made
+ * in batches of one kind. The reward of a batch is the improvement in objective it achieved per
+ * unit of work it took, and each kind of move keeps an exponentially weighted average of its
+ * rewards, so that the choice follows the lot as the cheap moves stop paying off. Every kind is
+ * tried once; after that the best kind is chosen, except for an occasional batch of a random kind
+ * so that the others are measured again.
+ *
+ * Work is counted by the layout and evaluator rather than timed: cell values read or copied, and
+ * index nodes visited. It tracks CPU time to within a small factor, but unlike a clock it is the
+ * same on every run, so a seeded search makes the same choices every time. The count is read
+ * twice per batch rather than per move, so selection costs next to nothing.
+ *
+ * @author robbi.mount
+ */
+final class MoveSelector {
+
+    private static final int BATCH = 256; //Moves per batch.
+    private static final double EXPLORE = 0.1; //Probability of a batch of a random kind.
+    private static final double WEIGHT = 0.3; //Weight of the latest batch in the average reward.
+
+    private final Move[] moves;
+    private final double[] rate; //Average improvement per unit of work of each kind.
+    private final long[] batches;
+    private final SeededRandom random;
+    private final LongSupplier work;
+    private int current;
+    private int left;
+    private long batchStart;
+    private double batchGain;
+
+    /**
+     * Constructs a selector.
+     *
+     * @param moves the kinds of move to choose from.
+     * @param random the optimizer's random number source.
+     * @param work the work done by the optimizer so far.
+     */
+    MoveSelector(Set<Move> moves, SeededRandom random, LongSupplier work) {
+        if (moves.isEmpty()) {
+            throw new IllegalArgumentException("At least one kind of move is required.");
+        }
+        this.moves = moves.toArray(new Move[0]);
+        this.rate = new double[this.moves.length];
+        this.batches = new long[this.moves.length];
+        this.random = random;
+        this.work = work;
+    }
+
+    /**
+     * Returns the kind of move to make next.
+     *
+     * @return the move.
+     */
+    Move next() {
+        if (left == 0) {
+            current = choose();
+            left = BATCH;
+            batchGain = 0;
+            batchStart = work.getAsLong();
+        }
+        return moves[current];
+    }
+
+    /**
+     * Records the outcome of the move last returned by next().
+     *
+     * @param gain the improvement in objective, zero if the move was undone and negative if a
+     * worse arrangement was accepted.
+     */
+    void record(double gain) {
+        batchGain += gain;
+        if (--left > 0) {
+            return;
+        }
+        double reward = Math.max(0, batchGain) / Math.max(1, work.getAsLong() - batchStart);
+        rate[current] = batches[current]++ == 0 ? reward : rate[current] + WEIGHT * (reward - rate[current]);
+    }
+
+    private int choose() {
+        if (moves.length == 1) {
+            return 0;
+        }
+        for (int i = 0; i < moves.length; i++) {
+            if (batches[i] == 0) {
+                return i;
+            }
+        }
+        if (random.nextDouble() < EXPLORE) {
+            return random.nextInt(moves.length);
+        }
+        int best = 0;
+        for (int i = 1; i < moves.length; i++) {
+            if (rate[i] > rate[best]) {
+                best = i;
+            }
+        }
+        return best;
+    }
+}
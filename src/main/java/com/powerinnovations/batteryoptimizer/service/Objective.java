@@ -0,0 +1,87 @@
+package com.powerinnovations.batteryoptimizer.service;
+
+import com.powerinnovations.batteryoptimizer.model.Pack;
+import java.util.List;
+
+/**
+ * The metric the optimizer minimizes. An objective is split in two: a score for each pack, and an
+ * aggregate of the pack scores for the whole lot. A swap only changes two packs, so the optimizer
+ * rescores just those two from the statistics a PackLayout keeps up to date, records the scores in
+ * a SpreadEvaluator, and asks the objective what the lot would score after the swap. No objective
+ * ever needs a full recalculation inside the optimizer loop.
+ *
+ * The built-in objectives are the StandardObjective constants. A custom objective must score a
+ * layout and a Pack object alike, and must never allocate in score(PackLayout, int) or
+ * evaluateSwap().
+ *
+ * @author robbi.mount
+ */
+public interface Objective {
+
+    /**
+     * Scores one pack of a layout from the statistics the layout maintains. Must run in constant
+     * time.
+     *
+     * @param layout the layout.
+     * @param pack the pack index.
+     * @return the score of the pack; lower is better.
+     */
+    double score(PackLayout layout, int pack);
+
+    /**
+     * Scores a Pack object. Must agree with score(PackLayout, int) for the same cells.
+     *
+     * @param pack the pack.
+     * @return the score of the pack; lower is better.
+     */
+    double score(Pack pack);
+
+    /**
+     * Evaluates the whole lot from the pack scores recorded in an evaluator.
+     *
+     * @param evaluator holds the current score of every pack.
+     * @return the objective of the lot.
+     */
+    double evaluate(SpreadEvaluator evaluator);
+
+    /**
+     * Evaluates the lot as it would be after a swap that changes the scores of two packs. The
+     * evaluator still holds the scores from before the swap.
+     *
+     * @param evaluator holds the current score of every pack.
+     * @param a the index of the first pack.
+     * @param scoreA the score of the first pack after the swap.
+     * @param b the index of the second pack.
+     * @param scoreB the score of the second pack after the swap.
+     * @return the objective the lot would have after the swap.
+     */
+    double evaluateSwap(SpreadEvaluator evaluator, int a, double scoreA, int b, double scoreB);
+
+    /**
+     * Returns the change in objective a swap would cause.
+     *
+     * @param evaluator holds the current score of every pack.
+     * @param a the index of the first pack.
+     * @param scoreA the score of the first pack after the swap.
+     * @param b the index of the second pack.
+     * @param scoreB the score of the second pack after the swap.
+     * @return the change in objective; negative is an improvement.
+     */
+    default double delta(SpreadEvaluator evaluator, int a, double scoreA, int b, double scoreB) {
+        return evaluateSwap(evaluator, a, scoreA, b, scoreB) - evaluate(evaluator);
+    }
+
+    /**
+     * Evaluates a list of Pack objects from scratch.
+     *
+     * @param packList the list of Pack objects.
+     * @return the objective of the lot.
+     */
+    default double evaluate(List<Pack> packList) {
+        SpreadEvaluator evaluator = new SpreadEvaluator(packList.size());
+        for (int p = 0; p < packList.size(); p++) {
+            evaluator.setSpread(p, score(packList.get(p)));
+        }
+        return evaluate(evaluator);
+    }
+}
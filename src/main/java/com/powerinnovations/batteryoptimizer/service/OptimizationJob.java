@@ -0,0 +1,261 @@
+package com.powerinnovations.batteryoptimizer.service;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The handle of one lot submitted to an OptimizationService. It reports the state and progress of
+ * the run, cancels it, and holds a future completed with the OptimizationResult once the run has
+ * stopped on its StoppingRule.
+ *
+ * The lot itself stays with the caller: while the job runs, its PackUtils publishes the best
+ * arrangement so far to its view as usual, and after a cancellation it still holds the best
+ * arrangement the run found.
+ *
+ * @author robbi.mount
+ */
+public final class OptimizationJob {
+
+    private final OptimizationService service;
+    private final String name;
+    private final PackUtils lot;
+    private final OptimizationMode mode;
+    private final StoppingRule rule;
+    private final int priority;
+    private final long sequence; //Order of submission; breaks ties between equal priorities.
+    private final long submitted;
+    private final CompletableFuture<OptimizationResult> result = new CompletableFuture<>();
+    private volatile JobState state = JobState.QUEUED;
+    private volatile long started;
+    private volatile long finished;
+    //Guarded by the service.
+    private Thread runner;
+    private boolean cancelRequested;
+
+    OptimizationJob(OptimizationService service, String name, PackUtils lot, OptimizationMode mode,
+            StoppingRule rule, int priority, long sequence) {
+        this.service = service;
+        this.name = name;
+        this.lot = lot;
+        this.mode = mode;
+        this.rule = rule;
+        this.priority = priority;
+        this.sequence = sequence;
+        this.submitted = System.currentTimeMillis();
+        //Cancelling the future directly cancels the job as well.
+        result.whenComplete((r, ex) -> {
+            if (result.isCancelled()) {
+                service.cancel(this);
+            }
+        });
+    }
+
+    /**
+     * Cancels the job. A queued job never starts. A running job is paused; it stops within a few
+     * milliseconds and its lot keeps the best arrangement found. Either way the result is
+     * cancelled.
+     *
+     * @return true if the job was queued or running and is now cancelled, false if it had already
+     * stopped.
+     */
+    public boolean cancel() {
+        return service.cancel(this);
+    }
+
+    /**
+     * Returns the result of the run. It completes with the OptimizationResult when the run stops
+     * on its StoppingRule, is cancelled if the job is, and completes exceptionally if the run
+     * fails.
+     *
+     * @return the future result.
+     */
+    public CompletableFuture<OptimizationResult> getResult() {
+        return result;
+    }
+
+    /**
+     * Returns an estimate of how far the run has progressed, from 0 while queued to 1 once it has
+     * stopped. While running it is the larger of the fraction of the time budget used and, if the
+     * run stops when optimized, the failed attempts in a row as a fraction of the
+     * optimizedStandard. A run may stop earlier on a target or a plateau, so the estimate never
+     * reaches 1 before the run has stopped.
+     *
+     * @return the progress, between 0 and 1.
+     */
+    public double getProgress() {
+        switch (state) {
+            case QUEUED:
+                return 0;
+            case RUNNING:
+                double done = 0;
+                if (rule.getTimeBudget() > 0) {
+                    done = getElapsed() / (double) rule.getTimeBudget();
+                }
+                if (rule.isStopWhenOptimized()) {
+                    done = Math.max(done, lot.getMetrics().getStepsSinceImprovement() / (double) lot.getOptimizedStandard());
+                }
+                return Math.min(done, 0.99);
+            default:
+                return 1;
+        }
+    }
+
+    /**
+     * Returns the iterations run on the lot so far, including any resumed from a checkpoint.
+     *
+     * @return the iterations
+     */
+    public long getIterations() {
+        return lot.getMetrics().getIterations();
+    }
+
+    /**
+     * Returns the objective of the best arrangement found so far.
+     *
+     * @return the best objective
+     */
+    public double getBestObjective() {
+        return lot.getMetrics().getBestObjective();
+    }
+
+    /**
+     * Returns the time the job has been running, or ran for once it has stopped.
+     *
+     * @return the elapsed time in milliseconds, or 0 if the job never started
+     */
+    public long getElapsed() {
+        long start = started;
+        if (start == 0) {
+            return 0;
+        }
+        long end = finished;
+        return (end == 0 ? System.currentTimeMillis() : end) - start;
+    }
+
+    /**
+     * Returns the state of the job.
+     *
+     * @return the state
+     */
+    public JobState getState() {
+        return state;
+    }
+
+    /**
+     * Returns the name given to the job.
+     *
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the lot being optimized.
+     *
+     * @return the lot
+     */
+    public PackUtils getLot() {
+        return lot;
+    }
+
+    /**
+     * Returns the method of optimization.
+     *
+     * @return the mode
+     */
+    public OptimizationMode getMode() {
+        return mode;
+    }
+
+    /**
+     * Returns when the run stops.
+     *
+     * @return the stopping rule
+     */
+    public StoppingRule getStoppingRule() {
+        return rule;
+    }
+
+    /**
+     * Returns the priority of the job; higher runs first.
+     *
+     * @return the priority
+     */
+    public int getPriority() {
+        return priority;
+    }
+
+    /**
+     * Returns the time the job was submitted.
+     *
+     * @return the submission time in milliseconds since the epoch
+     */
+    public long getSubmitted() {
+        return submitted;
+    }
+
+    long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Claims the job for the calling thread, unless it was cancelled before it could start. Must
+     * be called holding the service's lock.
+     *
+     * @return true if the job should run.
+     */
+    boolean begin() {
+        if (cancelRequested) {
+            return false;
+        }
+        runner = Thread.currentThread();
+        started = System.currentTimeMillis();
+        return true;
+    }
+
+    /**
+     * Asks the job to stop, interrupting its runner if it has started. Must be called holding the
+     * service's lock.
+     *
+     * @return false if cancellation had already been requested.
+     */
+    boolean requestCancel() {
+        if (cancelRequested) {
+            return false;
+        }
+        cancelRequested = true;
+        if (runner != null) {
+            runner.interrupt();
+        }
+        return true;
+    }
+
+    void setState(JobState state) {
+        this.state = state;
+    }
+
+    /**
+     * Records the outcome of the job and completes the result. Must be called holding the
+     * service's lock, by the runner if the job started.
+     *
+     * @param outcome the result of the run, or null if there is none.
+     * @param failure the error that stopped the run, or null.
+     */
+    void finish(OptimizationResult outcome, Throwable failure) {
+        if (runner != null) {
+            runner = null;
+            Thread.interrupted(); //A cancellation may land after the run has returned.
+            finished = System.currentTimeMillis();
+        }
+        if (cancelRequested) {
+            state = JobState.CANCELLED;
+            result.cancel(false);
+        } else if (outcome != null) {
+            state = JobState.FINISHED;
+            result.complete(outcome);
+        } else {
+            state = JobState.FAILED;
+            result.completeExceptionally(failure != null ? failure : new IllegalStateException("The run of " + name + " stopped without a result."));
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.powerinnovations.batteryoptimizer.service;
+
+/**
+ * The search strategies available to the optimizer.
+ *
+ * @author robbi.mount
+ */
+public enum OptimizationMode {
+
+    /**
+     * Two random packs exchange a random cell; the exchange is kept if it lowers the average
+     * spread of the lot.
+     */
+    TRULY_RANDOM,
+    /**
+     * The pack with the highest spread exchanges a random cell with a random pack; the exchange is
+     * kept if it lowers the highest spread of the lot.
+     */
+    HIGH_CENTERED,
+    /**
+     * Random exchanges scored against the highest spread of the lot, where a worse arrangement is
+     * accepted with a probability that falls as the AnnealingSchedule cools. The best arrangement
+     * seen is kept.
+     */
+    SIMULATED_ANNEALING;
+
+    /**
+     * Returns the mode matching the legacy trulyRandom flag.
+     *
+     * @param trulyRandom true = trulyRandom, false = use highest impedance spread.
+     * @return the matching mode.
+     */
+    public static OptimizationMode fromTrulyRandom(boolean trulyRandom) {
+        return trulyRandom ? TRULY_RANDOM : HIGH_CENTERED;
+    }
+}
@@ -0,0 +1,102 @@
+package com.powerinnovations.batteryoptimizer.service;
+
+import com.powerinnovations.batteryoptimizer.model.Pack;
+import java.util.List;
+
+/**
+ * The outcome of an optimization run: the best arrangement found, why the run stopped, and the
+ * seed it was run from.
+ *
+ * @author robbi.mount
+ */
+public final class OptimizationResult {
+
+    private final List<Pack> packs;
+    private final StopReason reason;
+    private final long iterations;
+    private final long elapsed;
+    private final Long seed;
+
+    /**
+     * Constructs a result.
+     *
+     * @param packs an immutable list of the best arrangement, in ascending order of spread.
+     * @param reason why the run stopped.
+     * @param iterations the total number of steps performed.
+     * @param elapsed the wall-clock duration of the run in milliseconds.
+     * @param seed the seed the run's random number source was built from, or null if it was
+     * resumed from a checkpoint.
+     */
+    public OptimizationResult(List<Pack> packs, StopReason reason, long iterations, long elapsed, Long seed) {
+        this.packs = packs;
+        this.reason = reason;
+        this.iterations = iterations;
+        this.elapsed = elapsed;
+        this.seed = seed;
+    }
+
+    /**
+     * Returns the best arrangement found.
+     *
+     * @return an immutable list of Pack objects
+     */
+    public List<Pack> getPacks() {
+        return packs;
+    }
+
+    /**
+     * Returns why the run stopped.
+     *
+     * @return the reason
+     */
+    public StopReason getReason() {
+        return reason;
+    }
+
+    /**
+     * Returns the total number of steps performed, including those before a resume.
+     *
+     * @return the iterations
+     */
+    public long getIterations() {
+        return iterations;
+    }
+
+    /**
+     * Returns the wall-clock duration of the run.
+     *
+     * @return the elapsed time in milliseconds
+     */
+    public long getElapsed() {
+        return elapsed;
+    }
+
+    /**
+     * Returns the seed the run was started from. Run again with the same seed, input, thread
+     * count and settings, and stopped by stopWhenOptimized rather than a time limit, a search
+     * returns exactly the same arrangement.
+     *
+     * @return the seed, or null if the run was resumed from a checkpoint
+     */
+    public Long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Returns the highest pack spread of the best arrangement.
+     *
+     * @return the highest spread
+     */
+    public double getHighSpread() {
+        return PackUtils.calculateHigh(packs);
+    }
+
+    /**
+     * Returns the average pack spread of the best arrangement.
+     *
+     * @return the average spread
+     */
+    public double getAverageSpread() {
+        return PackUtils.calculateAverageImp(packs);
+    }
+}
@@ -0,0 +1,270 @@
+package com.powerinnovations.batteryoptimizer.service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+
+/**
+ * Optimizes many lots as jobs, a bounded number at a time. Each lot is a PackUtils configured by
+ * the caller, with its own view, thread count, objective, moves, seed and checkpoint file, and is
+ * submitted with a mode, a StoppingRule and a priority. The service returns an OptimizationJob per
+ * lot, through which the caller follows its progress, cancels it and collects its result.
+ *
+ * At most maxConcurrentJobs lots are optimized at once; the rest wait in a queue. Whenever a slot
+ * frees up, the waiting job with the highest priority starts, and among equal priorities the one
+ * submitted first. So that a steady stream of high priority lots cannot hold back a low priority
+ * one forever, a waiting job gains one priority level for every AGING_INTERVAL it has waited.
+ * Each running lot uses its own threadCount workers, so giving every lot getThreadsPerJob()
+ * threads keeps the machine busy without oversubscribing it.
+ *
+ * Where the Java runtime has virtual threads, each job and the optimizer thread of each run are
+ * virtual threads, as they only wait; the workers that do the searching are platform threads
+ * either way. On older runtimes the jobs run on a fixed pool of maxConcurrentJobs daemon threads.
+ *
+ * The metrics of each lot are removed from the MBean server when its job stops, so a long-lived
+ * service does not collect one MBean per lot ever run.
+ *
+ * @author robbi.mount
+ */
+public class OptimizationService {
+
+    private static final long AGING_INTERVAL = 60000; //Milliseconds of waiting worth one priority level.
+
+    private final int maxConcurrentJobs;
+    private final Executor executor;
+    private final ThreadFactory optimizerThreads; //Null where virtual threads are unavailable.
+    //Guarded by this.
+    private final List<OptimizationJob> queue = new ArrayList<>();
+    private final Map<PackUtils, OptimizationJob> jobs = new LinkedHashMap<>(); //Queued and running, by lot.
+    private int running;
+    private long nextSequence;
+    private boolean shutdown;
+
+    /**
+     * Constructs a service that optimizes up to a given number of lots at once.
+     *
+     * @param maxConcurrentJobs the number of lots optimized at once.
+     */
+    public OptimizationService(int maxConcurrentJobs) {
+        if (maxConcurrentJobs < 1) {
+            throw new IllegalArgumentException("At least one job must be allowed to run.");
+        }
+        this.maxConcurrentJobs = maxConcurrentJobs;
+        ThreadFactory jobThreads = virtualThreadFactory("optimization-job-");
+        if (jobThreads != null) {
+            executor = task -> jobThreads.newThread(task).start();
+            optimizerThreads = virtualThreadFactory("optimizer-");
+        } else {
+            executor = ParallelOptimizer.newWorkerPool(maxConcurrentJobs, "optimization-job-");
+            optimizerThreads = null;
+        }
+    }
+
+    /**
+     * Queues a lot for optimization.
+     *
+     * @param name a name for the job, for example the file the lot was loaded from.
+     * @param lot the lot, configured and loaded. It must not be optimizing.
+     * @param mode the method of optimization.
+     * @param rule when to stop. It becomes the stoppingRule of the lot when the job starts.
+     * @param priority jobs of higher priority start first.
+     * @return the handle of the job.
+     * @throws IllegalArgumentException if the lot is empty, optimizing or already submitted.
+     * @throws IllegalStateException if the service has been shut down.
+     */
+    public synchronized OptimizationJob submit(String name, PackUtils lot, OptimizationMode mode, StoppingRule rule, int priority) {
+        if (shutdown) {
+            throw new IllegalStateException("The optimization service has been shut down.");
+        }
+        if (lot.getPackList().isEmpty()) {
+            throw new IllegalArgumentException("The lot " + name + " has no packs.");
+        }
+        if (jobs.containsKey(lot) || lot.isOptimizing()) {
+            throw new IllegalArgumentException("The lot " + name + " is already being optimized.");
+        }
+        if (mode == null || rule == null) {
+            throw new IllegalArgumentException("A mode and a stopping rule are required.");
+        }
+        OptimizationJob job = new OptimizationJob(this, name, lot, mode, rule, priority, nextSequence++);
+        jobs.put(lot, job);
+        queue.add(job);
+        dispatch();
+        return job;
+    }
+
+    /**
+     * Returns the jobs that are queued or running, in order of submission.
+     *
+     * @return a new list of the jobs.
+     */
+    public synchronized List<OptimizationJob> getJobs() {
+        return new ArrayList<>(jobs.values());
+    }
+
+    /**
+     * Returns the number of jobs waiting for a slot.
+     *
+     * @return the queued job count.
+     */
+    public synchronized int getQueuedCount() {
+        return queue.size();
+    }
+
+    /**
+     * Returns the number of jobs being optimized.
+     *
+     * @return the running job count.
+     */
+    public synchronized int getRunningCount() {
+        return running;
+    }
+
+    /**
+     * Returns the number of lots optimized at once.
+     *
+     * @return the maxConcurrentJobs
+     */
+    public int getMaxConcurrentJobs() {
+        return maxConcurrentJobs;
+    }
+
+    /**
+     * Returns the thread count that shares the processors evenly between the running lots.
+     *
+     * @return the processors divided by maxConcurrentJobs, at least 1.
+     */
+    public int getThreadsPerJob() {
+        return Math.max(1, Runtime.getRuntime().availableProcessors() / maxConcurrentJobs);
+    }
+
+    /**
+     * Stops accepting jobs. The jobs already submitted still run; once the last has stopped, the
+     * threads of the service are released.
+     */
+    public synchronized void shutdown() {
+        shutdown = true;
+        releaseIfIdle();
+    }
+
+    /**
+     * Cancels every queued and running job.
+     */
+    public synchronized void cancelAll() {
+        new ArrayList<>(jobs.values()).forEach(this::cancel);
+    }
+
+    /**
+     * Cancels a job. See OptimizationJob.cancel().
+     */
+    synchronized boolean cancel(OptimizationJob job) {
+        if (job.getState() == JobState.QUEUED) {
+            job.requestCancel();
+            queue.remove(job);
+            jobs.remove(job.getLot());
+            job.finish(null, null);
+            releaseIfIdle();
+            return true;
+        }
+        return job.getState() == JobState.RUNNING && job.requestCancel();
+    }
+
+    /**
+     * Starts waiting jobs while there are free slots. Must be called holding this lock.
+     */
+    private void dispatch() {
+        while (running < maxConcurrentJobs && !queue.isEmpty()) {
+            OptimizationJob job = queue.remove(next());
+            job.setState(JobState.RUNNING);
+            running++;
+            executor.execute(() -> run(job));
+        }
+    }
+
+    /**
+     * Returns the index of the waiting job to start next: the highest priority once aged, then the
+     * earliest submitted.
+     */
+    private int next() {
+        long now = System.currentTimeMillis();
+        int best = 0;
+        double bestRank = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < queue.size(); i++) {
+            OptimizationJob job = queue.get(i);
+            double rank = job.getPriority() + (now - job.getSubmitted()) / (double) AGING_INTERVAL;
+            if (rank > bestRank || (rank == bestRank && job.getSequence() < queue.get(best).getSequence())) {
+                best = i;
+                bestRank = rank;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * The body of a job thread. A cancellation interrupts the thread, which pauses the lot.
+     */
+    private void run(OptimizationJob job) {
+        PackUtils lot = job.getLot();
+        ThreadFactory previous = lot.getThreadFactory();
+        OptimizationResult result = null;
+        Throwable failure = null;
+        try {
+            synchronized (this) {
+                if (!job.begin()) {
+                    return;
+                }
+            }
+            if (optimizerThreads != null) {
+                lot.setThreadFactory(optimizerThreads);
+            }
+            result = lot.optimizeUntil(job.getMode(), job.getStoppingRule());
+        } catch (InterruptedException ex) {
+            //Cancelled; the lot has been paused.
+        } catch (RuntimeException ex) {
+            failure = ex;
+            ExceptionHandler.logEvent(Level.SEVERE, "Optimization of " + job.getName() + " failed: " + ex.getMessage(), ex);
+        } finally {
+            lot.setThreadFactory(previous);
+            lot.getMetrics().unregister();
+            synchronized (this) {
+                job.finish(result, failure);
+                jobs.remove(lot);
+                running--;
+                dispatch();
+                releaseIfIdle();
+            }
+        }
+    }
+
+    /**
+     * Shuts down the job pool once the service is shut down and no job is left. Must be called
+     * holding this lock.
+     */
+    private void releaseIfIdle() {
+        if (shutdown && jobs.isEmpty() && executor instanceof ExecutorService) {
+            ((ExecutorService) executor).shutdown();
+        }
+    }
+
+    /**
+     * Returns a factory of named virtual threads, looked up reflectively so that the service still
+     * runs on Java 8.
+     *
+     * @param name the prefix of the thread names.
+     * @return the factory, or null if the runtime has no virtual threads.
+     */
+    private static ThreadFactory virtualThreadFactory(String name) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> type = Class.forName("java.lang.Thread$Builder");
+            builder = type.getMethod("name", String.class, long.class).invoke(builder, name, 1L);
+            return (ThreadFactory) type.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            return null;
+        }
+    }
+}
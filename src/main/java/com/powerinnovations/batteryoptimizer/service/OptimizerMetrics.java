@@ -0,0 +1,228 @@
+package com.powerinnovations.batteryoptimizer.service;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Runtime metrics of a PackUtils optimization, published as an MBean so that a run can be watched
+ * from JConsole or a monitoring agent with or without a GUI attached.
+ *
+ * The optimizer thread of PackUtils records a sample every publish interval; the workers
+ * themselves are never slowed down to collect metrics. Allocation is measured through the
+ * com.sun.management extension of ThreadMXBean where the JVM provides it.
+ *
+ * @author robbi.mount
+ */
+public class OptimizerMetrics implements OptimizerMetricsMBean {
+
+    private static final AtomicInteger INSTANCES = new AtomicInteger();
+
+    private final ObjectName name;
+    private final com.sun.management.ThreadMXBean allocationBean;
+
+    private volatile boolean running;
+    private volatile long iterations;
+    private volatile double iterationsPerSecond;
+    private volatile double acceptanceRate;
+    private volatile double bestObjective = Double.NaN;
+    private volatile double currentObjective = Double.NaN;
+    private volatile long lastImprovement = System.currentTimeMillis();
+    private volatile long stepsSinceImprovement;
+    private volatile double allocatedBytesPerIteration = -1;
+
+    //Previous sample, only touched by the optimizer thread.
+    private long sampleTime;
+    private long sampleIterations;
+    private long sampleAccepted;
+    private long sampleAllocated;
+
+    /**
+     * Constructs a new set of metrics. It is not visible over JMX until register() is called.
+     */
+    public OptimizerMetrics() {
+        try {
+            name = new ObjectName("com.powerinnovations.batteryoptimizer:type=OptimizerMetrics,name=optimizer-"
+                    + INSTANCES.incrementAndGet());
+        } catch (JMException ex) {
+            throw new IllegalStateException(ex);
+        }
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        com.sun.management.ThreadMXBean bean = null;
+        try {
+            if (threads instanceof com.sun.management.ThreadMXBean
+                    && ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported()) {
+                bean = (com.sun.management.ThreadMXBean) threads;
+                bean.setThreadAllocatedMemoryEnabled(true);
+            }
+        } catch (UnsupportedOperationException | SecurityException ex) {
+            bean = null;
+        }
+        allocationBean = bean;
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server. Does nothing if already registered.
+     */
+    public void register() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (!server.isRegistered(name)) {
+                server.registerMBean(this, name);
+            }
+        } catch (JMException ex) {
+            ExceptionHandler.logEvent(Level.WARNING, ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Removes the metrics from the platform MBean server.
+     */
+    public void unregister() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException ex) {
+            ExceptionHandler.logEvent(Level.WARNING, ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Returns the name the metrics are registered under.
+     *
+     * @return the object name.
+     */
+    public ObjectName getName() {
+        return name;
+    }
+
+    /**
+     * Marks the start of a search and takes the baseline sample that the first rates are measured
+     * against.
+     *
+     * @param iterations the iterations performed before the search, when resumed.
+     * @param threadIds the IDs of the worker threads, or an empty array.
+     */
+    void started(long iterations, long[] threadIds) {
+        this.iterations = iterations;
+        sampleTime = System.nanoTime();
+        sampleIterations = iterations;
+        sampleAccepted = 0;
+        sampleAllocated = allocatedBytes(threadIds);
+        bestObjective = Double.NaN;
+        lastImprovement = System.currentTimeMillis();
+        running = true;
+    }
+
+    /**
+     * Records a sample of the running search.
+     *
+     * @param iterations the total iterations performed.
+     * @param accepted the steps kept since the search started.
+     * @param best the best objective found so far.
+     * @param current the objective of the current arrangement of the best worker.
+     * @param failedAttempts the longest run of failed improvement attempts of any worker.
+     * @param threadIds the IDs of the worker threads.
+     */
+    void sample(long iterations, long accepted, double best, double current, long failedAttempts,
+            long[] threadIds) {
+        long now = System.nanoTime();
+        long steps = iterations - sampleIterations;
+        if (now > sampleTime) {
+            iterationsPerSecond = steps * 1e9 / (now - sampleTime);
+        }
+        if (steps > 0) {
+            acceptanceRate = (double) (accepted - sampleAccepted) / steps;
+        }
+        long allocated = allocatedBytes(threadIds);
+        if (allocationBean != null && steps > 0 && allocated >= sampleAllocated) {
+            allocatedBytesPerIteration = (double) (allocated - sampleAllocated) / steps;
+        }
+        if (!(best >= bestObjective)) {
+            lastImprovement = System.currentTimeMillis();
+        }
+        this.iterations = iterations;
+        bestObjective = best;
+        currentObjective = current;
+        stepsSinceImprovement = failedAttempts;
+        sampleTime = now;
+        sampleIterations = iterations;
+        sampleAccepted = accepted;
+        sampleAllocated = allocated;
+    }
+
+    /**
+     * Marks the end of a search.
+     */
+    void stopped() {
+        running = false;
+        iterationsPerSecond = 0;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public long getIterations() {
+        return iterations;
+    }
+
+    @Override
+    public double getIterationsPerSecond() {
+        return iterationsPerSecond;
+    }
+
+    @Override
+    public double getAcceptanceRate() {
+        return acceptanceRate;
+    }
+
+    @Override
+    public double getBestObjective() {
+        return bestObjective;
+    }
+
+    @Override
+    public double getCurrentObjective() {
+        return currentObjective;
+    }
+
+    @Override
+    public long getMillisSinceLastImprovement() {
+        return System.currentTimeMillis() - lastImprovement;
+    }
+
+    @Override
+    public long getStepsSinceImprovement() {
+        return stepsSinceImprovement;
+    }
+
+    @Override
+    public double getAllocatedBytesPerIteration() {
+        return allocatedBytesPerIteration;
+    }
+
+    /**
+     * Sums the bytes allocated so far by the given threads. Threads that have ended count as 0.
+     */
+    private long allocatedBytes(long[] threadIds) {
+        if (allocationBean == null || threadIds.length == 0) {
+            return 0;
+        }
+        long total = 0;
+        for (long bytes : allocationBean.getThreadAllocatedBytes(threadIds)) {
+            if (bytes > 0) {
+                total += bytes;
+            }
+        }
+        return total;
+    }
+}
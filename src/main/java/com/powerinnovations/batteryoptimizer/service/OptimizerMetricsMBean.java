@@ -0,0 +1,75 @@
+package com.powerinnovations.batteryoptimizer.service;
+
+/**
+ * The management interface of OptimizerMetrics, as seen from JConsole or a monitoring agent.
+ * Rates are measured over the interval between the two most recent samples.
+ *
+ * @author robbi.mount
+ */
+public interface OptimizerMetricsMBean {
+
+    /**
+     * Returns whether an optimization is running.
+     *
+     * @return true while optimizing.
+     */
+    public boolean isRunning();
+
+    /**
+     * Returns the total number of optimizer steps performed, including those before a resume.
+     *
+     * @return the iteration count.
+     */
+    public long getIterations();
+
+    /**
+     * Returns the number of optimizer steps performed per second across every worker.
+     *
+     * @return the iteration rate.
+     */
+    public double getIterationsPerSecond();
+
+    /**
+     * Returns the fraction of steps that were kept rather than undone.
+     *
+     * @return the acceptance rate, between 0 and 1.
+     */
+    public double getAcceptanceRate();
+
+    /**
+     * Returns the objective of the best arrangement found so far.
+     *
+     * @return the best objective.
+     */
+    public double getBestObjective();
+
+    /**
+     * Returns the objective of the current arrangement of the best worker. In simulated annealing
+     * mode this may be worse than the best objective.
+     *
+     * @return the current objective.
+     */
+    public double getCurrentObjective();
+
+    /**
+     * Returns the time since the best objective last improved.
+     *
+     * @return the time in milliseconds.
+     */
+    public long getMillisSinceLastImprovement();
+
+    /**
+     * Returns the longest run of failed improvement attempts of any worker. Optimization completes
+     * once every worker's run exceeds optimizedStandard.
+     *
+     * @return the number of consecutive failed attempts.
+     */
+    public long getStepsSinceImprovement();
+
+    /**
+     * Returns the number of bytes allocated by the optimizer workers per step.
+     *
+     * @return the bytes per iteration, or -1 if the JVM cannot measure thread allocation.
+     */
+    public double getAllocatedBytesPerIteration();
+}
@@ -0,0 +1,266 @@
+package com.powerinnovations.batteryoptimizer.service;
+
+import com.powerinnovations.batteryoptimizer.model.Cell;
+import com.powerinnovations.batteryoptimizer.model.Pack;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.DecimalFormat;
+import java.util.List;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.SpreadsheetVersion;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+/**
+ * Writes pack results to a file, one pack per row, streaming as it goes. XLSX output goes through
+ * an SXSSFWorkbook that keeps only a small window of rows in memory, so lots of any size export in
+ * constant memory. Columns are given fixed widths rather than auto-sized, which would mean
+ * measuring every cell of the sheet.
+ *
+ * When the packs come from a seeded optimizer run, the seed is recorded with them: on a second
+ * sheet of a workbook, in a last column of a CSV file, and in the seed field of the JSON document,
+ * which is null otherwise.
+ *
+ * @author robbi.mount
+ */
+public final class PackExporter {
+
+    private static final int ROW_WINDOW = 100; //Rows SXSSF keeps in memory before flushing to disk.
+    private static final int PROGRESS_INTERVAL = 1024; //Packs written between progress reports.
+    private static final int PACK_COLUMN_WIDTH = 12 * 256; //In 1/256ths of a character.
+    private static final int CELL_COLUMN_WIDTH = 24 * 256;
+
+    private final DecimalFormat df = new DecimalFormat("#0.00");
+    private final Long seed;
+
+    /**
+     * Constructs an exporter that records no seed.
+     */
+    public PackExporter() {
+        this(null);
+    }
+
+    /**
+     * Constructs an exporter that records the seed of the run the packs come from.
+     *
+     * @param seed the seed, or null if none is known.
+     */
+    public PackExporter(Long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Writes the packs to a file.
+     *
+     * @param packs the packs to export. Every pack must hold the same number of cells.
+     * @param file the file to write.
+     * @param format the format to write.
+     * @param listener receives the number of packs written so far, or null.
+     * @throws IOException thrown in the event of an IO error.
+     */
+    public void export(List<Pack> packs, File file, ExportFormat format, ProgressListener listener) throws IOException {
+        if (packs.isEmpty()) {
+            throw new IllegalArgumentException("There are no packs to export.");
+        }
+        switch (format) {
+            case XLS:
+                if (packs.size() >= SpreadsheetVersion.EXCEL97.getMaxRows()) {
+                    throw new IllegalArgumentException("An XLS file holds at most "
+                            + (SpreadsheetVersion.EXCEL97.getMaxRows() - 1) + " packs; export to XLSX instead.");
+                }
+                writeWorkbook(new HSSFWorkbook(), packs, file, listener);
+                break;
+            case CSV:
+                writeCsv(packs, file, listener);
+                break;
+            case JSON:
+                writeJson(packs, file, listener);
+                break;
+            default:
+                SXSSFWorkbook wb = new SXSSFWorkbook(ROW_WINDOW);
+                try {
+                    writeWorkbook(wb, packs, file, listener);
+                } finally {
+                    wb.dispose();
+                }
+        }
+    }
+
+    private void writeWorkbook(Workbook wb, List<Pack> packs, File file, ProgressListener listener) throws IOException {
+        int numOfCells = packs.get(0).getCellCount();
+        Sheet sheet = wb.createSheet("Battery Sort Results");
+        sheet.setColumnWidth(0, PACK_COLUMN_WIDTH);
+        for (int i = 1; i <= numOfCells; i++) {
+            sheet.setColumnWidth(i, CELL_COLUMN_WIDTH);
+        }
+        sheet.setColumnWidth(numOfCells + 1, CELL_COLUMN_WIDTH);
+
+        //Build the document header
+        Row row = sheet.createRow(0);
+        row.createCell(0).setCellValue("Pack Num:");
+        for (int i = 1; i <= numOfCells; i++) {
+            row.createCell(i).setCellValue("Cell " + i + ":");
+        }
+        row.createCell(numOfCells + 1).setCellValue("Average Impedance:");
+
+        //Populate the Data
+        int rowCount = 1;
+        for (Pack p : packs) {
+            Row r = sheet.createRow(rowCount);
+            int cellCount = 1;
+            r.createCell(0).setCellValue(p.getID());
+            for (Cell c : p.getCells()) {
+                r.createCell(cellCount).setCellValue(c.getAddress()
+                        + " ("
+                        + df.format(c.getImpedance() * 1000)
+                        + " mΩ)");
+                cellCount++;
+            }
+            r.createCell(cellCount).setCellValue(df.format(p.calculateSpreadImp() * 100) + "%");
+            progress(listener, rowCount, packs.size());
+            rowCount++;
+        }
+
+        if (seed != null) {
+            Sheet run = wb.createSheet("Run");
+            run.setColumnWidth(1, CELL_COLUMN_WIDTH);
+            Row seedRow = run.createRow(0);
+            seedRow.createCell(0).setCellValue("Seed:");
+            seedRow.createCell(1).setCellValue(Long.toString(seed));
+        }
+
+        //Write the document
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+            wb.write(out);
+        } finally {
+            wb.close();
+        }
+        if (listener != null) {
+            listener.progress(packs.size(), packs.size());
+        }
+    }
+
+    private void writeCsv(List<Pack> packs, File file, ProgressListener listener) throws IOException {
+        int numOfCells = packs.get(0).getCellCount();
+        try (Writer out = newWriter(file)) {
+            out.write("pack_ID");
+            for (int i = 1; i <= numOfCells; i++) {
+                out.write(",cell_" + i + "_ID,cell_" + i + "_value");
+            }
+            out.write(seed != null ? ",spread,seed\n" : ",spread\n");
+            int count = 0;
+            for (Pack p : packs) {
+                out.write(csvField(p.getID()));
+                for (Cell c : p.getCells()) {
+                    out.write(',');
+                    out.write(csvField(c.getAddress()));
+                    out.write(',');
+                    out.write(Double.toString(c.getImpedance()));
+                }
+                out.write(',');
+                out.write(Double.toString(p.calculateSpreadImp()));
+                if (seed != null) {
+                    out.write(',');
+                    out.write(Long.toString(seed));
+                }
+                out.write('\n');
+                progress(listener, ++count, packs.size());
+            }
+        }
+        if (listener != null) {
+            listener.progress(packs.size(), packs.size());
+        }
+    }
+
+    private void writeJson(List<Pack> packs, File file, ProgressListener listener) throws IOException {
+        try (Writer out = newWriter(file)) {
+            out.write("{\"seed\":");
+            out.write(seed != null ? Long.toString(seed) : "null");
+            out.write(",\"packs\":[");
+            int count = 0;
+            for (Pack p : packs) {
+                out.write(count == 0 ? "\n" : ",\n");
+                out.write("{\"id\":");
+                out.write(jsonString(p.getID()));
+                out.write(",\"spread\":");
+                out.write(Double.toString(p.calculateSpreadImp()));
+                out.write(",\"cells\":[");
+                boolean first = true;
+                for (Cell c : p.getCells()) {
+                    out.write(first ? "{\"address\":" : ",{\"address\":");
+                    out.write(jsonString(c.getAddress()));
+                    out.write(",\"impedance\":");
+                    out.write(Double.toString(c.getImpedance()));
+                    out.write('}');
+                    first = false;
+                }
+                out.write("]}");
+                progress(listener, ++count, packs.size());
+            }
+            out.write("\n]}\n");
+        }
+        if (listener != null) {
+            listener.progress(packs.size(), packs.size());
+        }
+    }
+
+    private static Writer newWriter(File file) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8), 1 << 16);
+    }
+
+    private static void progress(ProgressListener listener, int done, int total) {
+        if (listener != null && done % PROGRESS_INTERVAL == 0) {
+            listener.progress(done, total);
+        }
+    }
+
+    /**
+     * Quotes a CSV field if it contains a separator, quote or line break (RFC 4180).
+     */
+    private static String csvField(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    private static String jsonString(String value) {
+        StringBuilder sb = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char ch = value.charAt(i);
+            switch (ch) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (ch < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) ch));
+                    } else {
+                        sb.append(ch);
+                    }
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
@@ -0,0 +1,439 @@
+package com.powerinnovations.batteryoptimizer.service;
+
+import com.powerinnovations.batteryoptimizer.model.Cell;
+import com.powerinnovations.batteryoptimizer.model.Pack;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A primitive, struct-of-arrays representation of a lot of packs for use inside the optimizer
+ * loop. Cell impedances are held in a flat array alongside the slot each cell occupies, and each
+ * pack owns a fixed run of slots holding the indices of its cells. Per-pack sum, low, high, spread and
+ * squared deviation from the pack mean are kept up to date as cells are exchanged, so any Objective
+ * can score a pack in constant time. A move made of one or more exchanges can be undone without
+ * any allocation.
+ *
+ * Pack and Cell objects are only built from a layout when the results are published.
+ *
+ * @author robbi.mount
+ */
+public class PackLayout {
+
+    private final Cell[] cells;
+    private final String[] packIds;
+    private final double[] impedance;
+    private final int[] position; //The slot each cell occupies.
+    private final int cellsPerPack;
+    private final int[] slots;
+    private final double[] sum;
+    private final double[] low;
+    private final double[] high;
+    private final double[] spread;
+    private final double[] deviation; //Sum of squared deviations of the cells from the pack mean.
+
+    //Journal of the exchanges of the current move, with the statistics of both packs before each.
+    private static final int STATS = 5;
+    private final int[] journalA;
+    private final int[] journalB;
+    private final double[] saved;
+    private int journalLength;
+
+    private long work; //Cell values read or copied.
+
+    /**
+     * Constructs a layout from a list of packs. Every pack must hold the same number of cells.
+     *
+     * @param packList the list of Pack objects, in lot order.
+     * @throws IllegalArgumentException if the list is empty or the packs differ in size.
+     */
+    public PackLayout(List<Pack> packList) throws IllegalArgumentException {
+        if (packList.isEmpty()) {
+            throw new IllegalArgumentException("A lot must contain at least one pack.");
+        }
+        int packCount = packList.size();
+        this.cellsPerPack = packList.get(0).getCellCount();
+        this.cells = new Cell[packCount * cellsPerPack];
+        this.packIds = new String[packCount];
+        this.impedance = new double[cells.length];
+        this.position = new int[cells.length];
+        this.slots = new int[cells.length];
+        this.sum = new double[packCount];
+        this.low = new double[packCount];
+        this.high = new double[packCount];
+        this.spread = new double[packCount];
+        this.deviation = new double[packCount];
+        this.journalA = new int[journalCapacity(cellsPerPack)];
+        this.journalB = new int[journalA.length];
+        this.saved = new double[journalA.length * 2 * STATS];
+
+        int slot = 0;
+        for (int p = 0; p < packCount; p++) {
+            Pack pack = packList.get(p);
+            if (pack.getCellCount() != cellsPerPack) {
+                throw new IllegalArgumentException("Every pack must contain the same number of cells.");
+            }
+            packIds[p] = pack.getID();
+            for (Cell c : pack.getCells()) {
+                cells[slot] = c;
+                impedance[slot] = c.getImpedance();
+                position[slot] = slot;
+                slots[slot] = slot;
+                slot++;
+            }
+            refresh(p);
+        }
+    }
+
+    /**
+     * Constructs an independent copy of another layout.
+     *
+     * @param other the layout to copy.
+     */
+    public PackLayout(PackLayout other) {
+        this.cells = other.cells;
+        this.packIds = other.packIds;
+        this.impedance = other.impedance;
+        this.cellsPerPack = other.cellsPerPack;
+        this.position = other.position.clone();
+        this.slots = other.slots.clone();
+        this.sum = other.sum.clone();
+        this.low = other.low.clone();
+        this.high = other.high.clone();
+        this.spread = other.spread.clone();
+        this.deviation = other.deviation.clone();
+        this.journalA = new int[other.journalA.length];
+        this.journalB = new int[journalA.length];
+        this.saved = new double[other.saved.length];
+    }
+
+    /**
+     * Overwrites this arrangement with that of another layout of the same lot, without allocating.
+     *
+     * @param other a layout created from this one or from the same lot.
+     */
+    public void copyFrom(PackLayout other) {
+        System.arraycopy(other.position, 0, position, 0, position.length);
+        System.arraycopy(other.slots, 0, slots, 0, slots.length);
+        System.arraycopy(other.sum, 0, sum, 0, sum.length);
+        System.arraycopy(other.low, 0, low, 0, low.length);
+        System.arraycopy(other.high, 0, high, 0, high.length);
+        System.arraycopy(other.spread, 0, spread, 0, spread.length);
+        System.arraycopy(other.deviation, 0, deviation, 0, deviation.length);
+        journalLength = 0;
+        work += 2 * slots.length;
+    }
+
+    /**
+     * Returns the number of packs in the layout.
+     *
+     * @return the pack count.
+     */
+    public int getPackCount() {
+        return packIds.length;
+    }
+
+    /**
+     * Returns the number of cells in each pack.
+     *
+     * @return the cells per pack.
+     */
+    public int getCellsPerPack() {
+        return cellsPerPack;
+    }
+
+    /**
+     * Returns the impedance spread of a pack in terms of the range divided by the average
+     * impedance.
+     *
+     * @param pack the pack index.
+     * @return the impedance spread.
+     */
+    public double getSpread(int pack) {
+        return spread[pack];
+    }
+
+    /**
+     * Returns the sum of the cell impedances of a pack.
+     *
+     * @param pack the pack index.
+     * @return the impedance sum.
+     */
+    public double getSum(int pack) {
+        return sum[pack];
+    }
+
+    /**
+     * Returns the lowest cell impedance of a pack.
+     *
+     * @param pack the pack index.
+     * @return the lowest impedance.
+     */
+    public double getLow(int pack) {
+        return low[pack];
+    }
+
+    /**
+     * Returns the highest cell impedance of a pack.
+     *
+     * @param pack the pack index.
+     * @return the highest impedance.
+     */
+    public double getHigh(int pack) {
+        return high[pack];
+    }
+
+    /**
+     * Returns the sum of the squared deviations of the cell impedances of a pack from the pack
+     * mean.
+     *
+     * @param pack the pack index.
+     * @return the squared deviation.
+     */
+    public double getSquaredDeviation(int pack) {
+        return deviation[pack];
+    }
+
+    /**
+     * Returns the number of cell values read or copied so far, to update pack statistics or
+     * otherwise. Unlike a clock, this measure of the work done on the layout is the same every time
+     * the same moves are made.
+     *
+     * @return the work done.
+     */
+    public long getWork() {
+        return work;
+    }
+
+    /**
+     * Returns the impedance of the cell held in a slot.
+     *
+     * @param slot the slot index.
+     * @return the impedance.
+     */
+    public double getSlotImpedance(int slot) {
+        work++;
+        return impedance[slots[slot]];
+    }
+
+    /**
+     * Returns the pack that owns a slot.
+     *
+     * @param slot the slot index.
+     * @return the pack index.
+     */
+    public int packOf(int slot) {
+        return slot / cellsPerPack;
+    }
+
+    /**
+     * Returns the pack a cell is currently assigned to.
+     *
+     * @param cell the cell index.
+     * @return the pack index.
+     */
+    public int getAssignment(int cell) {
+        return packOf(position[cell]);
+    }
+
+    /**
+     * Returns the slot a cell currently occupies.
+     *
+     * @param cell the cell index.
+     * @return the slot index.
+     */
+    public int slotOf(int cell) {
+        return position[cell];
+    }
+
+    /**
+     * Returns the number of cells in the layout. Cells are indexed from 0 in the order of the
+     * packs the layout was built from, and keep their index as they move between packs.
+     *
+     * @return the cell count.
+     */
+    public int getCellCount() {
+        return cells.length;
+    }
+
+    /**
+     * Returns the impedance of a cell.
+     *
+     * @param cell the cell index.
+     * @return the impedance.
+     */
+    public double getCellImpedance(int cell) {
+        return impedance[cell];
+    }
+
+    /**
+     * Returns the most exchanges a single move may be made of: enough to re-partition two packs.
+     *
+     * @param cellsPerPack the number of cells in each pack.
+     * @return the journal capacity.
+     */
+    static int journalCapacity(int cellsPerPack) {
+        return cellsPerPack + 2;
+    }
+
+    /**
+     * Starts a new move by exchanging the cells held in two slots, and updates the statistics of
+     * the packs involved. The move can be reverted with undo() until the next move is started.
+     *
+     * @param slotA the first slot.
+     * @param slotB the second slot, which must belong to a different pack.
+     */
+    public void swap(int slotA, int slotB) {
+        journalLength = 0;
+        swapAlso(slotA, slotB);
+    }
+
+    /**
+     * Exchanges the cells held in two more slots as part of the current move, so that undo()
+     * reverts both this and the earlier exchanges of the move.
+     *
+     * @param slotA the first slot.
+     * @param slotB the second slot, which must belong to a different pack.
+     * @throws IllegalStateException if the move already holds journalCapacity() exchanges.
+     */
+    public void swapAlso(int slotA, int slotB) {
+        if (journalLength == journalA.length) {
+            throw new IllegalStateException("A move cannot be made of more than " + journalA.length + " exchanges.");
+        }
+        int packA = packOf(slotA);
+        int packB = packOf(slotB);
+        int entry = journalLength++;
+        journalA[entry] = slotA;
+        journalB[entry] = slotB;
+        save(packA, entry * 2 * STATS);
+        save(packB, (entry * 2 + 1) * STATS);
+
+        exchange(slotA, slotB);
+        refresh(packA);
+        refresh(packB);
+    }
+
+    /**
+     * Reverts every exchange of the current move, latest first.
+     */
+    public void undo() {
+        while (journalLength > 0) {
+            int entry = --journalLength;
+            exchange(journalA[entry], journalB[entry]);
+            restore(packOf(journalB[entry]), (entry * 2 + 1) * STATS);
+            restore(packOf(journalA[entry]), entry * 2 * STATS);
+        }
+    }
+
+    /**
+     * Deals every cell into a random pack, discarding the current arrangement.
+     *
+     * @param random the random number source.
+     */
+    public void shuffle(SeededRandom random) {
+        for (int s = slots.length - 1; s > 0; s--) {
+            int other = random.nextInt(s + 1);
+            int cell = slots[s];
+            slots[s] = slots[other];
+            slots[other] = cell;
+        }
+        for (int s = 0; s < slots.length; s++) {
+            position[slots[s]] = s;
+        }
+        for (int p = 0; p < packIds.length; p++) {
+            refresh(p);
+        }
+        journalLength = 0;
+    }
+
+    /**
+     * Builds a list of Pack objects reflecting the current arrangement.
+     *
+     * @return a new list of Pack objects, in lot order.
+     */
+    public List<Pack> toPacks() {
+        List<Pack> packs = new ArrayList<>(packIds.length);
+        for (int p = 0; p < packIds.length; p++) {
+            packs.add(toPack(p));
+        }
+        return packs;
+    }
+
+    /**
+     * Builds a list of Pack objects reflecting the current arrangement in the given order.
+     *
+     * @param order the pack indices in the order they should be listed.
+     * @return a new list of Pack objects.
+     */
+    public List<Pack> toPacks(int[] order) {
+        List<Pack> packs = new ArrayList<>(order.length);
+        for (int p : order) {
+            packs.add(toPack(p));
+        }
+        return packs;
+    }
+
+    private Pack toPack(int p) {
+        Pack pack = new Pack(packIds[p]);
+        for (int s = p * cellsPerPack; s < (p + 1) * cellsPerPack; s++) {
+            pack.addCell(cells[slots[s]]);
+        }
+        return pack;
+    }
+
+    private void save(int pack, int offset) {
+        saved[offset] = sum[pack];
+        saved[offset + 1] = low[pack];
+        saved[offset + 2] = high[pack];
+        saved[offset + 3] = spread[pack];
+        saved[offset + 4] = deviation[pack];
+    }
+
+    private void restore(int pack, int offset) {
+        sum[pack] = saved[offset];
+        low[pack] = saved[offset + 1];
+        high[pack] = saved[offset + 2];
+        spread[pack] = saved[offset + 3];
+        deviation[pack] = saved[offset + 4];
+    }
+
+    private void exchange(int slotA, int slotB) {
+        int cell = slots[slotA];
+        slots[slotA] = slots[slotB];
+        slots[slotB] = cell;
+        position[slots[slotA]] = slotA;
+        position[cell] = slotB;
+    }
+
+    /**
+     * Recalculates the statistics of a single pack from its slots.
+     *
+     * @param pack the pack index.
+     */
+    private void refresh(int pack) {
+        work += cellsPerPack;
+        double total = 0;
+        double hi = 0;
+        double lo = Double.MAX_VALUE;
+        for (int s = pack * cellsPerPack; s < (pack + 1) * cellsPerPack; s++) {
+            double value = impedance[slots[s]];
+            total += value;
+            if (value > hi) {
+                hi = value;
+            }
+            if (value < lo) {
+                lo = value;
+            }
+        }
+        double mean = total / cellsPerPack;
+        double squares = 0;
+        for (int s = pack * cellsPerPack; s < (pack + 1) * cellsPerPack; s++) {
+            double d = impedance[slots[s]] - mean;
+            squares += d * d;
+        }
+        sum[pack] = total;
+        low[pack] = lo;
+        high[pack] = hi;
+        spread[pack] = (hi - lo) / mean;
+        deviation[pack] = squares;
+    }
+}
@@ -1,28 +1,22 @@
 package com.powerinnovations.batteryoptimizer.service;
 
 import com.powerinnovations.batteryoptimizer.model.Cell;
+import com.powerinnovations.batteryoptimizer.model.CellLot;
 import com.powerinnovations.batteryoptimizer.model.Pack;
 import com.powerinnovations.batteryoptimizer.view.OptimizerView;
-import java.awt.Desktop;
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.Reader;
-import java.text.DecimalFormat;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
-import java.util.Random;
-import java.util.Stack;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
-import javax.swing.JOptionPane;
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVRecord;
-import org.apache.poi.hssf.usermodel.HSSFWorkbook;
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.ss.usermodel.Workbook;
 
 /**
  * Provides utilities for the comparison and calculation of Pack object collections.
@@ -32,11 +26,30 @@ import org.apache.poi.ss.usermodel.Workbook;
  */
 public class PackUtils {
 
-    private boolean running;
+    private volatile boolean running;
     private Thread optimizerThread;
+    private ThreadFactory threadFactory = Thread::new; //Creates the optimizer thread of each run.
     private final OptimizerView gui;
-    private final List<Pack> packList;
+    private final AtomicReference<List<Pack>> packList; //Always an immutable snapshot; replaced, never modified.
+    private final OptimizerMetrics metrics;
     private int optimizedStandard = 10000; //An arbitrary large number of failed improvement attempts that is a safe indication that optimization has occured.
+    private int threadCount = 1;
+    private int shardSize = 0;
+    private AnnealingSchedule annealingSchedule = new AnnealingSchedule();
+    private Objective objective; //Null to use the objective of the mode.
+    private Set<Move> moves = EnumSet.allOf(Move.class);
+    private StoppingRule stoppingRule = new StoppingRule();
+    private volatile OptimizationResult lastResult;
+    private File checkpointFile;
+    private long checkpointInterval = 60000; //Milliseconds between checkpoints while optimizing.
+    private SeededRandom resumeRandom;
+    private Long seed; //Null to draw a new seed for every run.
+    private volatile Long runSeed; //The seed of the run that produced the packList, if any.
+    private long previousIterations;
+    private double publishRate = 10; //Maximum display updates per second while optimizing.
+    private volatile List<Cell> unassigned = Collections.emptyList(); //Cells waiting for a pack; an immutable snapshot.
+    private CellInserter inserter;
+    private List<Pack> inserted; //The snapshot the inserter last published; it is rebuilt if the packList moves on.
 
     /**
      * Constructs a new PackUtils object and ties it to a OptimizerView object as a user interface.
@@ -45,7 +58,8 @@ public class PackUtils {
      */
     public PackUtils(OptimizerView gui) {
         this.gui = gui;
-        packList = new ArrayList<>();
+        packList = new AtomicReference<>(Collections.emptyList());
+        metrics = new OptimizerMetrics();
     }
 
     /**
@@ -94,61 +108,59 @@ public class PackUtils {
     }
 
     /**
-     * Creates and launches an Excel document depicting the current Pack collection contents.
+     * Writes a document depicting the current Pack collection contents. The format is chosen by
+     * the file name extension: .xlsx, .xls, .csv or .json, with XLSX for anything else. It can be
+     * called while optimizing, and then exports the best arrangement published so far.
      *
+     * @param file the file to write the document to.
      * @throws IOException
      */
-    public void exportPackDetailsToExcel() throws IOException {
-        DecimalFormat df = new DecimalFormat("#0.00");
-        int numOfCells = getPackList().get(0).getCellCount();
+    public void exportPackDetailsToExcel(File file) throws IOException {
+        export(file, ExportFormat.fromFile(file), null);
+    }
 
-        //Create the document
-        Workbook wb = new HSSFWorkbook();
-        Sheet sheet = wb.createSheet("Battery Sort Results");
-        Row row = sheet.createRow(0);
+    /**
+     * Writes the current Pack collection to a file in the given format. Nothing is held in memory
+     * beyond the Pack collection itself, so lots of any size can be exported.
+     *
+     * @param file the file to write.
+     * @param format the format to write.
+     * @param listener receives the number of packs written so far, or null.
+     * @throws IOException thrown in the event of an IO error.
+     */
+    public void export(File file, ExportFormat format, ProgressListener listener) throws IOException {
+        new PackExporter(runSeed).export(getPackList(), file, format, listener);
+    }
 
-        //Build the document header
-        row.createCell(0).setCellValue("Pack Num:");
-        for (int i = 1; i <= numOfCells; i++) {
-            row.createCell(i).setCellValue("Cell " + i + ":");
-        }
-        row.createCell(numOfCells + 1).setCellValue("Average Impedance:");
-
-        //Populate the Data
-        int rowCount = 1;
-        for (Pack p : getPackList()) {
-            Row r = sheet.createRow(rowCount);
-            int cellCount = 1;
-            r.createCell(0).setCellValue(p.getID());
-            for (Cell c : p.getCells()) {
-                r.createCell(cellCount).setCellValue(c.getAddress()
-                        + " ("
-                        + df.format(c.getImpedance() * 1000)
-                        + " mΩ)");
-                cellCount++;
+    /**
+     * Writes the current Pack collection to a file on a background thread. The collection is
+     * captured when this method is called, so optimization may carry on during the export.
+     *
+     * @param file the file to write.
+     * @param format the format to write.
+     * @param listener receives the number of packs written so far, on the export thread, or null.
+     * @return a future completed with the file once it is written, or with the error that stopped
+     * the export.
+     */
+    public CompletableFuture<File> exportInBackground(File file, ExportFormat format, ProgressListener listener) {
+        List<Pack> packs = getPackList();
+        Long exportSeed = runSeed;
+        CompletableFuture<File> future = new CompletableFuture<>();
+        Thread exportThread = new Thread(() -> {
+            try {
+                new PackExporter(exportSeed).export(packs, file, format, listener);
+                future.complete(file);
+            } catch (IOException | RuntimeException ex) {
+                future.completeExceptionally(ex);
             }
-            r.createCell(cellCount).setCellValue(df.format(p.calculateSpreadImp() * 100) + "%");
-            rowCount++;
-        }
-
-        //Format the sheet for easy Viewing
-        for (int i = 0; i < numOfCells + 2; i++) {
-            sheet.autoSizeColumn(i);
-        }
-
-        //Open a temporary file and launch it in Excel
-        File file = File.createTempFile("sortexport", ".xls");
-        try (FileOutputStream fos = new FileOutputStream(file)) {
-            wb.write(fos);
-            fos.close();
-            Desktop.getDesktop().open(file);
-        } catch (IOException e) {
-            throw e;
-        }
+        }, "pack-export");
+        exportThread.start();
+        return future;
     }
 
     /**
-     * Creates a List of Pack objects based upon a CSV file input.
+     * Creates a List of Pack objects based upon a CSV file input. The packs are seeded by the
+     * SortedPartitionSolver, which cuts the cells sorted by impedance into consecutive packs.
      *
      * @param csvFile a file object containing RFC-1480 CSV data.
      * @param numCellsPerPack the desired number of cells per pack
@@ -157,44 +169,197 @@ public class PackUtils {
      * IllegalArgumentException would be thrown.
      */
     public void loadPackListFromCsv(File csvFile, int numCellsPerPack) throws IOException, IllegalArgumentException {
-        List<Pack> packs = new ArrayList<>();
-        Stack<Cell> cells = new Stack<>();
+        loadPackListFromCsv(csvFile, numCellsPerPack, null);
+    }
 
+    /**
+     * Creates a List of Pack objects based upon a CSV file input, reporting progress as the file is
+     * read. The file is streamed through the CsvCellReader, which memory maps it and parses it
+     * straight into a primitive CellLot.
+     *
+     * @param csvFile a file object containing RFC-1480 CSV data.
+     * @param numCellsPerPack the desired number of cells per pack
+     * @param listener receives the number of bytes read so far, or null.
+     * @throws IOException thrown in the event of an IO error, or an indivisible number of packs.
+     */
+    public void loadPackListFromCsv(File csvFile, int numCellsPerPack, ProgressListener listener) throws IOException, IllegalArgumentException {
         //Read the CSV data and create a master list of cells.
-        try (Reader source = new FileReader(csvFile)) {
-            Iterable<CSVRecord> records = CSVFormat.EXCEL.withFirstRecordAsHeader().parse(source);
-            records.forEach(csvCell -> {
-                Cell newCell = new Cell(csvCell.get("cell_ID"), csvCell.get("cell_value"));
-                cells.push(newCell);
-            });
-        } catch (NumberFormatException e) {
-            throw e;
-        }
+        CellLot lot = CsvCellReader.read(csvFile, listener);
 
         //Check and see if the number of provided cells is divisible by the requested pack size.
-        if (cells.size() % numCellsPerPack != 0) {
+        if (lot.size() % numCellsPerPack != 0) {
             throw new IllegalArgumentException("The number of cells provided is not divisible by the specified pack size.");
         }
 
         //Create individual packs
-        int totalCells = cells.size();
-        for (int i = 0; i < totalCells / numCellsPerPack; i++) {
-            Pack p = new Pack(Integer.toString(i));
-            for (int j = 0; j < numCellsPerPack; j++) {
-                p.addCell(cells.pop());
-            }
-            packs.add(p);
+        List<Pack> packs = new SortedPartitionSolver(lot.toCells(), numCellsPerPack).solve();
+        packList.updateAndGet((current) -> {
+            List<Pack> combined = new ArrayList<>(current);
+            combined.addAll(packs);
+            return Collections.unmodifiableList(combined);
+        });
+        resumeRandom = null;
+        runSeed = null;
+        previousIterations = 0;
+        gui.updateDisplay(getPackList());
+    }
+
+    /**
+     * Replaces the Pack collection with the arrangement saved in a checkpoint. The next call to
+     * optimize() resumes from it: the search continues the saved random number sequence and
+     * iteration count. Loading a checkpoint from an earlier run warm-starts a new one.
+     *
+     * @param file the checkpoint file, as written while optimizing with a checkpointFile set.
+     * @return the checkpoint that was loaded.
+     * @throws IOException thrown in the event of an IO error, or if the file is not a valid
+     * checkpoint.
+     */
+    public Checkpoint loadCheckpoint(File file) throws IOException {
+        Checkpoint checkpoint = Checkpoint.read(file);
+        packList.set(checkpoint.getPacks());
+        unassigned = checkpoint.getUnassigned();
+        resumeRandom = checkpoint.getRandom();
+        runSeed = null;
+        previousIterations = checkpoint.getIterations();
+        gui.updateDisplay(checkpoint.getPacks());
+        return checkpoint;
+    }
+
+    /**
+     * Places newly measured cells into the current arrangement without optimizing it again. Each
+     * cell is swapped into a nearby pack if that narrows it, and new packs are built from the
+     * unassigned cells once they can be built no wider than the widest pack already in the lot.
+     * Cells that fit nowhere yet are kept as unassigned cells and reconsidered with the next
+     * batch. See CellInserter.
+     *
+     * @param cells the new cells.
+     * @param cellsPerPack the number of cells per pack, which must match the existing packs.
+     * @return the number of new packs built.
+     * @throws IllegalStateException if the optimizer is running.
+     */
+    public int insertCells(Collection<Cell> cells, int cellsPerPack) {
+        CellInserter cellInserter = inserterFor(cellsPerPack);
+        int built = cellInserter.insert(cells);
+        publishInserted();
+        return built;
+    }
+
+    /**
+     * Places the cells of a CSV file into the current arrangement without optimizing it again.
+     * The number of cells need not divide by the pack size. See insertCells().
+     *
+     * @param csvFile a file object containing RFC-1480 CSV data.
+     * @param cellsPerPack the number of cells per pack, which must match the existing packs.
+     * @param listener receives the number of bytes read so far, or null.
+     * @return the number of new packs built.
+     * @throws IOException thrown in the event of an IO error.
+     * @throws IllegalStateException if the optimizer is running.
+     */
+    public int insertCellsFromCsv(File csvFile, int cellsPerPack, ProgressListener listener) throws IOException {
+        CellLot lot = CsvCellReader.read(csvFile, listener);
+        return insertCells(lot.toCells(), cellsPerPack);
+    }
+
+    /**
+     * Builds as many packs as possible from the unassigned cells, whatever their spread.
+     *
+     * @return the number of new packs built.
+     * @throws IllegalStateException if the optimizer is running.
+     */
+    public int assignUnassignedCells() {
+        List<Pack> current = getPackList();
+        if (current.isEmpty()) {
+            return 0; //With no packs, insertCells() has already built every pack it could.
         }
-        packList.addAll(packs);
-        gui.updateDisplay(new ArrayList(packList));
+        CellInserter cellInserter = inserterFor(current.get(0).getCellCount());
+        int built = cellInserter.assignRemaining();
+        publishInserted();
+        return built;
     }
 
-    public void pauseOptimize() {
+    /**
+     * Returns the cells waiting for a pack: those left over by insertCells(), or restored from a
+     * checkpoint.
+     *
+     * @return an immutable snapshot of the unassigned cells
+     */
+    public List<Cell> getUnassignedCells() {
+        return unassigned;
+    }
+
+    /**
+     * Returns an inserter over the current arrangement, reusing the last one unless the packList
+     * has been replaced since.
+     */
+    private CellInserter inserterFor(int cellsPerPack) {
+        if (running) {
+            throw new IllegalStateException("Cells cannot be inserted while optimizing.");
+        }
+        List<Pack> current = getPackList();
+        if (!current.isEmpty() && current.get(0).getCellCount() != cellsPerPack) {
+            throw new IllegalArgumentException("The lot is made of packs of " + current.get(0).getCellCount() + " cells.");
+        }
+        if (inserter == null || current != inserted || inserter.getCellsPerPack() != cellsPerPack) {
+            inserter = new CellInserter(current, unassigned, cellsPerPack);
+        }
+        return inserter;
+    }
+
+    private void publishInserted() {
+        unassigned = Collections.unmodifiableList(inserter.getUnassigned());
+        publish(inserter.getPacks());
+        inserted = getPackList();
+    }
+
+    /**
+     * Replaces the current Pack collection with the partition found by the SortedPartitionSolver.
+     * This is deterministic and near instant, and gives the random optimizer a strong starting
+     * point to refine.
+     *
+     * @return the highest pack spread of the new partition, or 0 if there are no packs.
+     */
+    public double partitionSorted() {
+        List<Pack> current = getPackList();
+        if (current.isEmpty()) {
+            return 0; //An empty lot has nothing to partition.
+        }
+        List<Cell> cells = new ArrayList<>();
+        current.stream().forEach((pack) -> {
+            cells.addAll(pack.getCells());
+        });
+        SortedPartitionSolver solver = new SortedPartitionSolver(cells, current.get(0).getCellCount());
+        publish(solver.solve(current.size()));
+        runSeed = null;
+        return solver.getMaxSpread();
+    }
+
+    /**
+     * Asks the optimizer thread to stop and returns at once. The thread still writes its final
+     * checkpoint and arrangement; pauseOptimize() waits for that.
+     */
+    public void requestStop() {
         running = false;
-        synchronized (packList) {
-            packList.sort((p1, p2) -> p1.compareTo(p2));
-            gui.updateDisplay(packList);
+    }
+
+    /**
+     * Stops the optimizer thread, waits for it to publish its final arrangement and sorts the Pack
+     * collection by impedance spread. The wait covers the final checkpoint write and, for a sharded
+     * run, the batch each shard is in, so callers on the event dispatch thread should call
+     * requestStop() and leave this to a background thread.
+     */
+    public void pauseOptimize() {
+        requestStop();
+        Thread thread = optimizerThread;
+        if (thread != null && thread != Thread.currentThread()) {
+            try {
+                thread.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
         }
+        List<Pack> sorted = new ArrayList<>(getPackList());
+        sorted.sort((p1, p2) -> p1.compareTo(p2));
+        publish(sorted);
     }
 
     /**
@@ -204,91 +369,261 @@ public class PackUtils {
      * are swapped. If the resulting defined metric (collection average for truly random, max
      * impedance for high centered) is less than the baseline, the change is kept; otherwise the
      * original pack configuration is kept and a new cycle begins. This trulyRandom continually
-     * seeks a lower end state of either metric by brute processor power and randomization.
+     * seeks a lower end state of either metric by brute processor power and randomization. When
+     * an objective is set, it replaces the metric of the mode.
+     *
+     * The search itself runs in a ParallelOptimizer: threadCount independent LotOptimizer workers,
+     * each on a primitive copy of the Pack collection. The collection is only rebuilt from the best
+     * worker when an improvement is published to the view, at most publishRate times a second, and
+     * once more when the search stops. The search stops when the stoppingRule says so, by default
+     * once every worker has failed to improve optimizedStandard times in a row; the deadline of the
+     * rule is met to within a few milliseconds. The final arrangement is published in spread order;
+     * when packs are scored by spread it comes straight from the best worker's SpreadIndex, so the
+     * sort in pauseOptimize() runs over an already sorted list.
+     *
+     * While the search runs, the OptimizerMetrics are sampled at the publishRate and published
+     * over JMX. If a checkpointFile is set, the best arrangement is also saved to it every
+     * checkpointInterval and once more when the search stops.
      *
      * @param trulyRandom the method of optimization; true = trulyRandom, false = use highest
      * impedance spread.
      */
     public void optimize(boolean trulyRandom) {
+        optimize(OptimizationMode.fromTrulyRandom(trulyRandom));
+    }
+
+    /**
+     * Starts the optimizer thread in the given mode. See optimize(boolean) for the hill-climbing
+     * modes. In simulated annealing mode worse arrangements are accepted with a probability set by
+     * the annealingSchedule, and optimization is only complete once the schedule has cooled and
+     * optimizedStandard further attempts have failed to beat the best arrangement.
+     *
+     * @param mode the method of optimization.
+     */
+    public void optimize(OptimizationMode mode) {
+        List<Pack> packs = getPackList();
+        if (getShardSize() > 0 && packs.size() > getShardSize()) {
+            optimizeSharded(mode, new ArrayList<>(packs));
+            return;
+        }
+        ParallelOptimizer search = new ParallelOptimizer(packs, mode, objectiveFor(mode), getMoves(), getAnnealingSchedule(), getThreadCount(), takeRandom());
+        Long searchSeed = runSeed;
+        StoppingRule rule = getStoppingRule();
         running = true;
-        optimizerThread = new Thread() {
+        metrics.register();
+        optimizerThread = threadFactory.newThread(new Runnable() {
             @Override
             public void run() {
-                Random ran = new Random();
-                int completeCounter = 0;
-                while (running) {
-                    synchronized (packList) {
-                        try {
-                            double baseline = 0;
-                            Pack workingA = null;
-                            Pack workingB = null;
-
-                            //Gather the specimens
-                            if (trulyRandom) {
-                                baseline = PackUtils.calculateAverageImp(packList);
-                                workingA = packList.remove(ran.nextInt(packList.size()));
-                                workingB = packList.remove(ran.nextInt(packList.size()));
-                            } else {
-                                baseline = PackUtils.calculateHigh(packList);
-                                workingA = Collections.max(packList);
-                                packList.remove(workingA);
-                                workingB = packList.remove(ran.nextInt(packList.size()));
-                            }
-
-                            //Prepare a backup
-                            Pack cloneA = workingA.getClone();
-                            Pack cloneB = workingB.getClone();
-
-                            //Make the switcheroo
-                            workingA.addCell(workingB.getRandomCell());
-                            workingB.addCell(workingA.getRandomCell());
-                            packList.add(workingA);
-                            packList.add(workingB);
-
-                            //Check the result
-                            double result = 0;
-                            if (trulyRandom) {
-                                result = PackUtils.calculateAverageImp(packList);
-                            } else {
-                                result = PackUtils.calculateHigh(packList);
-                            }
-
-                            //If we didn't improve, undo.
-                            if (!(result < baseline)) {
-                                packList.remove(workingA);
-                                packList.remove(workingB);
-                                packList.add(cloneA);
-                                packList.add(cloneB);
-                                completeCounter++;
-                            } else {
-                                completeCounter = 0;
-                            }
-
-                            //Check and see if optimisation is complete (by law of large numbers)
-                            if (completeCounter > getOptimizedStandard()) {
-                                pauseOptimize();
-                                JOptionPane.showMessageDialog(null, "Optimization Complete");
-                            }
-                            gui.updateDisplay(new ArrayList(packList));
-                        } catch (Exception ex) {
-                            ExceptionHandler.logEvent(Level.SEVERE, ex.getMessage(), ex);
+                StoppingRule.Tracker tracker = rule.start();
+                search.start(rule.isStopWhenOptimized() ? getOptimizedStandard() : Integer.MAX_VALUE);
+                metrics.started(previousIterations, search.getWorkerThreadIds());
+                double published = search.getBestObjective();
+                long checkpointed = System.currentTimeMillis();
+                StopReason reason = StopReason.PAUSED;
+                try {
+                    while (running) {
+                        if (search.awaitFinished(tracker.nextWait(getPublishInterval()))) {
+                            reason = StopReason.COMPLETE;
+                            break;
+                        }
+                        search.sample(metrics, previousIterations);
+                        double best = search.getBestObjective();
+                        if (best < published) {
+                            publish(search.getBestPacks());
+                            published = best;
+                        }
+                        if (getCheckpointFile() != null
+                                && System.currentTimeMillis() - checkpointed >= getCheckpointInterval()) {
+                            writeCheckpoint(search.checkpoint(previousIterations));
+                            checkpointed = System.currentTimeMillis();
+                        }
+                        double[] spreads = search.getBestSpreads();
+                        StopReason triggered = tracker.check(spreads[0], spreads[1], best);
+                        if (triggered != null) {
+                            reason = triggered;
+                            break;
                         }
                     }
+                } catch (InterruptedException ex) {
+                    ExceptionHandler.logEvent(Level.SEVERE, ex.getMessage(), ex);
+                }
+
+                //Check and see if optimisation is complete (by law of large numbers)
+                boolean complete = running;
+                running = false;
+                search.stop();
+                search.sample(metrics, previousIterations);
+                metrics.stopped();
+                Checkpoint last = search.checkpoint(previousIterations);
+                previousIterations = last.getIterations();
+                if (getCheckpointFile() != null) {
+                    writeCheckpoint(last);
+                }
+                publish(search.getBestSortedPacks());
+                lastResult = new OptimizationResult(getPackList(), complete ? reason : StopReason.PAUSED,
+                        previousIterations, tracker.getElapsed(), searchSeed);
+                if (complete) {
+                    pauseOptimize();
+                    gui.optimizationComplete(getPackList());
                 }
             }
-        };
+        });
         optimizerThread.start();
     }
 
     /**
-     * Returns a copy of the pack list
+     * Starts the optimizer thread on a ShardedOptimizer. The lot is published once the shards are
+     * optimized and stitched, or as soon as the optimizer is paused. A checkpoint, if enabled, is
+     * only written at that point. Of the stoppingRule, only the time budget and stopWhenOptimized
+     * apply to sharded runs.
      *
-     * @return the packList
+     * @param mode the method of optimization used within each shard.
+     * @param packs a copy of the Pack collection.
      */
-    public List<Pack> getPackList() {
-        synchronized (packList) {
-            return new ArrayList(packList);
+    private void optimizeSharded(OptimizationMode mode, List<Pack> packs) {
+        SeededRandom random = takeRandom();
+        Long searchSeed = runSeed;
+        ShardedOptimizer search = new ShardedOptimizer(mode, objectiveFor(mode), getMoves(), getAnnealingSchedule(), getShardSize(), getThreadCount(), random);
+        StoppingRule rule = getStoppingRule();
+        running = true;
+        metrics.register();
+        metrics.started(previousIterations, new long[0]);
+        optimizerThread = threadFactory.newThread(new Runnable() {
+            @Override
+            public void run() {
+                StoppingRule.Tracker tracker = rule.start();
+                int standard = rule.isStopWhenOptimized() ? getOptimizedStandard() : Integer.MAX_VALUE;
+                List<Pack> result = packs;
+                try {
+                    result = search.optimize(packs, standard, () -> running && !tracker.isPastDeadline());
+                } catch (Exception ex) {
+                    ExceptionHandler.logEvent(Level.SEVERE, ex.getMessage(), ex);
+                }
+                boolean complete = running;
+                running = false;
+                metrics.stopped();
+                result.sort((p1, p2) -> p1.compareTo(p2));
+                if (getCheckpointFile() != null) {
+                    writeCheckpoint(new Checkpoint(mode, result, objectiveFor(mode).evaluate(result), previousIterations, random));
+                }
+                publish(result);
+                StopReason reason = tracker.isPastDeadline() ? StopReason.DEADLINE : StopReason.COMPLETE;
+                lastResult = new OptimizationResult(getPackList(), complete ? reason : StopReason.PAUSED,
+                        previousIterations, tracker.getElapsed(), searchSeed);
+                if (complete) {
+                    pauseOptimize();
+                    gui.optimizationComplete(getPackList());
+                }
+            }
+        });
+        optimizerThread.start();
+    }
+
+    /**
+     * Runs the optimizer in the given mode until the stopping rule triggers or the optimizer is
+     * paused, and returns the best arrangement found. The rule becomes the stoppingRule of this
+     * PackUtils. The view is updated as usual while the run lasts.
+     *
+     * @param mode the method of optimization.
+     * @param rule when to stop.
+     * @return the result of the run.
+     * @throws InterruptedException if the calling thread is interrupted while waiting; the
+     * optimizer is then paused.
+     */
+    public OptimizationResult optimizeUntil(OptimizationMode mode, StoppingRule rule) throws InterruptedException {
+        setStoppingRule(rule);
+        optimize(mode);
+        try {
+            optimizerThread.join();
+        } catch (InterruptedException ex) {
+            pauseOptimize();
+            throw ex;
         }
+        return getLastResult();
+    }
+
+    /**
+     * Returns the random number source for the next search, and records its seed as the runSeed.
+     * A seed that was set takes precedence; otherwise the generator restored from a checkpoint is
+     * used, if one was loaded and not yet used, and a new seed is drawn only if there is neither.
+     * A search resumed from a checkpoint has no seed of its own and records none.
+     *
+     * @return the random number source.
+     */
+    private SeededRandom takeRandom() {
+        SeededRandom random = resumeRandom;
+        resumeRandom = null;
+        if (seed == null && random != null) {
+            runSeed = null;
+            return random;
+        }
+        runSeed = seed != null ? seed : ThreadLocalRandom.current().nextLong();
+        return new SeededRandom(runSeed);
+    }
+
+    /**
+     * Saves the current Pack collection and unassigned cells to the checkpointFile without
+     * optimizing, for example after inserting a batch of cells. A checkpoint loaded earlier keeps
+     * its random number state and iteration count.
+     *
+     * @param mode the method of optimization to record.
+     * @throws IOException thrown in the event of an IO error.
+     * @throws IllegalStateException if no checkpointFile is set.
+     */
+    public void saveCheckpoint(OptimizationMode mode) throws IOException {
+        if (getCheckpointFile() == null) {
+            throw new IllegalStateException("No checkpoint file is set.");
+        }
+        List<Pack> packs = getPackList();
+        SeededRandom random = resumeRandom != null ? resumeRandom : seed != null ? new SeededRandom(seed) : new SeededRandom();
+        new Checkpoint(mode, packs, unassigned, objectiveFor(mode).evaluate(packs), previousIterations, random)
+                .write(getCheckpointFile());
+    }
+
+    /**
+     * Writes a checkpoint to the checkpointFile. A failed write is logged and the search carries
+     * on; the previous checkpoint is left intact.
+     *
+     * @param checkpoint the checkpoint to write.
+     */
+    private void writeCheckpoint(Checkpoint checkpoint) {
+        try {
+            checkpoint.withUnassigned(unassigned).write(getCheckpointFile());
+        } catch (IOException ex) {
+            ExceptionHandler.logEvent(Level.WARNING, ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Replaces the Pack collection with a new arrangement and updates the view. The list must not
+     * be modified afterwards.
+     *
+     * @param packs the new Pack collection.
+     */
+    private void publish(List<Pack> packs) {
+        List<Pack> snapshot = Collections.unmodifiableList(packs);
+        packList.set(snapshot);
+        gui.updateDisplay(snapshot);
+    }
+
+    /**
+     * Returns the pack list. While optimizing, this is the best arrangement published so far; it
+     * never waits on the optimizer.
+     *
+     * @return an immutable snapshot of the packList
+     */
+    public List<Pack> getPackList() {
+        return packList.get();
+    }
+
+    /**
+     * Returns the runtime metrics of the optimizer. They are registered with the platform MBean
+     * server when optimization first starts.
+     *
+     * @return the metrics
+     */
+    public OptimizerMetrics getMetrics() {
+        return metrics;
     }
 
     /**
@@ -309,6 +644,265 @@ public class PackUtils {
         this.optimizedStandard = optimizedStandard;
     }
 
+    /**
+     * Returns the factory that creates the optimizer thread of each run.
+     *
+     * @return the threadFactory
+     */
+    public ThreadFactory getThreadFactory() {
+        return threadFactory;
+    }
+
+    /**
+     * Sets the factory that creates the optimizer thread of each run. The optimizer thread spends
+     * its time waiting on the workers, so it may be a virtual thread; the workers themselves are
+     * always platform threads.
+     *
+     * @param threadFactory the threadFactory to set
+     */
+    public void setThreadFactory(ThreadFactory threadFactory) {
+        if (threadFactory == null) {
+            throw new IllegalArgumentException("A thread factory is required.");
+        }
+        this.threadFactory = threadFactory;
+    }
+
+    /**
+     * Returns the number of optimizer threads used by optimize().
+     *
+     * @return the thread count
+     */
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * Sets the number of independent optimizer threads used by optimize(). Each thread searches
+     * its own copy of the lot and the best result across all of them is kept.
+     *
+     * @param threadCount the thread count to set, at least 1
+     */
+    public void setThreadCount(int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("At least one optimizer thread is required.");
+        }
+        this.threadCount = threadCount;
+    }
+
+    /**
+     * Returns the number of packs per shard when sharded optimization is used.
+     *
+     * @return the shardSize, or 0 if sharding is disabled
+     */
+    public int getShardSize() {
+        return shardSize;
+    }
+
+    /**
+     * Sets the number of packs per shard. Lots with more packs than this are optimized by a
+     * ShardedOptimizer, one impedance band at a time, rather than as a whole.
+     *
+     * @param shardSize the shardSize to set, at least 2, or 0 to disable sharding
+     */
+    public void setShardSize(int shardSize) {
+        if (shardSize != 0 && shardSize < 2) {
+            throw new IllegalArgumentException("A shard must contain at least two packs.");
+        }
+        this.shardSize = shardSize;
+    }
+
+    /**
+     * Returns the temperature schedule used in simulated annealing mode.
+     *
+     * @return the annealingSchedule
+     */
+    public AnnealingSchedule getAnnealingSchedule() {
+        return annealingSchedule;
+    }
+
+    /**
+     * Sets the temperature schedule used in simulated annealing mode.
+     *
+     * @param annealingSchedule the annealingSchedule to set
+     */
+    public void setAnnealingSchedule(AnnealingSchedule annealingSchedule) {
+        this.annealingSchedule = annealingSchedule;
+    }
+
+    /**
+     * Returns the metric optimize() minimizes.
+     *
+     * @return the objective, or null if the objective of the mode is used
+     */
+    public Objective getObjective() {
+        return objective;
+    }
+
+    /**
+     * Sets the metric optimize() minimizes, for example one of the StandardObjective constants.
+     * By default the mean spread is minimized in TRULY_RANDOM mode and the highest spread in the
+     * other modes.
+     *
+     * @param objective the objective to set, or null to use the objective of the mode
+     */
+    public void setObjective(Objective objective) {
+        this.objective = objective;
+    }
+
+    /**
+     * Returns the seed optimize() builds its random number source from.
+     *
+     * @return the seed, or null if a new seed is drawn for every run
+     */
+    public Long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Sets the seed optimize() builds its random number source from. Every worker, shard and
+     * choice of move draws from generators split off that one source, so a run from the same
+     * seed, input, threadCount and settings that stops because it is optimized, rather than on
+     * a time limit, produces exactly the same arrangement. A seed that is set also takes
+     * precedence over the random number state of a loaded checkpoint.
+     *
+     * @param seed the seed to set, or null to draw a new seed for every run
+     */
+    public void setSeed(Long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Returns the seed of the run that produced the current Pack collection. It is drawn at random
+     * unless a seed was set, and is recorded in the OptimizationResult and in exports so that any
+     * run can be repeated.
+     *
+     * @return the seed, or null if the Pack collection was not produced by a seeded run
+     */
+    public Long getRunSeed() {
+        return runSeed;
+    }
+
+    /**
+     * Returns the kinds of move optimize() makes.
+     *
+     * @return a copy of the moves
+     */
+    public Set<Move> getMoves() {
+        return EnumSet.copyOf(moves);
+    }
+
+    /**
+     * Sets the kinds of move optimize() makes. By default every kind is made, and the optimizer
+     * favours whichever is paying off best as it runs; EnumSet.of(Move.SWAP) restricts it to
+     * single random swaps.
+     *
+     * @param moves the moves to set; at least one
+     */
+    public void setMoves(Set<Move> moves) {
+        if (moves.isEmpty()) {
+            throw new IllegalArgumentException("At least one kind of move is required.");
+        }
+        this.moves = EnumSet.copyOf(moves);
+    }
+
+    private Objective objectiveFor(OptimizationMode mode) {
+        return objective != null ? objective : StandardObjective.forMode(mode);
+    }
+
+    /**
+     * Returns the rule that decides when optimize() stops.
+     *
+     * @return the stoppingRule
+     */
+    public StoppingRule getStoppingRule() {
+        return stoppingRule;
+    }
+
+    /**
+     * Sets the rule that decides when optimize() stops. It applies from the next call to
+     * optimize().
+     *
+     * @param stoppingRule the stoppingRule to set
+     */
+    public void setStoppingRule(StoppingRule stoppingRule) {
+        this.stoppingRule = stoppingRule;
+    }
+
+    /**
+     * Returns the result of the most recent optimization run.
+     *
+     * @return the lastResult, or null if no run has ended yet
+     */
+    public OptimizationResult getLastResult() {
+        return lastResult;
+    }
+
+    /**
+     * Returns the maximum rate of display updates while optimizing.
+     *
+     * @return the publishRate in updates per second
+     */
+    public double getPublishRate() {
+        return publishRate;
+    }
+
+    /**
+     * Sets the maximum rate of display updates while optimizing. The search is never slowed down
+     * to publish; a lower rate only means fewer snapshots are built.
+     *
+     * @param publishRate the publishRate to set in updates per second, greater than 0
+     */
+    public void setPublishRate(double publishRate) {
+        if (!(publishRate > 0)) {
+            throw new IllegalArgumentException("The publish rate must be positive.");
+        }
+        this.publishRate = publishRate;
+    }
+
+    private long getPublishInterval() {
+        return Math.max(1, Math.round(1000 / publishRate));
+    }
+
+    /**
+     * Returns the file optimize() saves checkpoints to.
+     *
+     * @return the checkpointFile, or null if checkpoints are disabled
+     */
+    public File getCheckpointFile() {
+        return checkpointFile;
+    }
+
+    /**
+     * Sets the file optimize() saves checkpoints to. The file is replaced atomically on every
+     * write and can be loaded back with loadCheckpoint().
+     *
+     * @param checkpointFile the checkpointFile to set, or null to disable checkpoints
+     */
+    public void setCheckpointFile(File checkpointFile) {
+        this.checkpointFile = checkpointFile;
+    }
+
+    /**
+     * Returns the time between checkpoints while optimizing.
+     *
+     * @return the checkpointInterval in milliseconds
+     */
+    public long getCheckpointInterval() {
+        return checkpointInterval;
+    }
+
+    /**
+     * Sets the time between checkpoints while optimizing.
+     *
+     * @param checkpointInterval the checkpointInterval to set in milliseconds, at least 1
+     */
+    public void setCheckpointInterval(long checkpointInterval) {
+        if (checkpointInterval < 1) {
+            throw new IllegalArgumentException("The checkpoint interval must be positive.");
+        }
+        this.checkpointInterval = checkpointInterval;
+    }
+
     /**
      * Returns the status of the optimization thread.
      *
@@ -0,0 +1,338 @@
+package com.powerinnovations.batteryoptimizer.service;
+
+import com.powerinnovations.batteryoptimizer.model.Pack;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+
+/**
+ * Runs several independent LotOptimizer workers over the same lot on a fixed thread pool. Each
+ * worker owns its own copy of the lot and its own random number source split from a common one.
+ * The first worker starts from the arrangement it was given; every other worker restarts from a
+ * random arrangement, so the workers explore different parts of the search space. The best
+ * arrangement found by any worker is reported.
+ *
+ * A worker finishes once its annealing schedule (if any) has cooled and it has then failed to
+ * improve optimizedStandard times in a row. The search is finished once every worker has.
+ *
+ * @author robbi.mount
+ */
+public class ParallelOptimizer {
+
+    static final int BATCH = 1024; //Steps a worker performs between releasing its optimizer.
+
+    private final OptimizationMode mode;
+    private final List<Worker> workers;
+    private final ExecutorService executor;
+    private final CountDownLatch finished;
+    private volatile boolean running;
+
+    /**
+     * Constructs a parallel search. Nothing runs until start() is called.
+     *
+     * @param packList the list of Pack objects to optimize.
+     * @param mode the method of optimization.
+     * @param objective the metric to minimize.
+     * @param moves the kinds of move the workers make.
+     * @param schedule the temperature schedule, used in simulated annealing mode only.
+     * @param threadCount the number of workers, each on its own thread.
+     * @param random the source the workers' random number generators are split from.
+     */
+    public ParallelOptimizer(List<Pack> packList, OptimizationMode mode, Objective objective, Set<Move> moves,
+            AnnealingSchedule schedule, int threadCount, SeededRandom random) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("At least one optimizer thread is required.");
+        }
+        this.mode = mode;
+        this.workers = new ArrayList<>(threadCount);
+        for (int i = 0; i < threadCount; i++) {
+            LotOptimizer optimizer = new LotOptimizer(packList, mode, objective, moves, schedule, random.split());
+            if (i > 0) {
+                optimizer.restart();
+            }
+            workers.add(new Worker(optimizer));
+        }
+        this.executor = newWorkerPool(threadCount, "optimizer-worker-");
+        this.finished = new CountDownLatch(threadCount);
+    }
+
+    /**
+     * Starts every worker.
+     *
+     * @param optimizedStandard the number of consecutive failed improvement attempts after which a
+     * worker is considered optimized.
+     */
+    public void start(int optimizedStandard) {
+        running = true;
+        workers.stream().forEach((worker) -> {
+            worker.optimizedStandard = optimizedStandard;
+            executor.execute(worker);
+        });
+        executor.shutdown();
+    }
+
+    /**
+     * Stops every worker and waits for them to release their optimizers.
+     */
+    public void stop() {
+        running = false;
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Waits up to the given time for every worker to finish.
+     *
+     * @param timeout the maximum time to wait in milliseconds.
+     * @return true if every worker has finished.
+     * @throws InterruptedException if the calling thread is interrupted while waiting.
+     */
+    public boolean awaitFinished(long timeout) throws InterruptedException {
+        return finished.await(timeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns whether every worker has finished.
+     *
+     * @return true if the search is finished.
+     */
+    public boolean isFinished() {
+        return finished.getCount() == 0;
+    }
+
+    /**
+     * Returns the number of workers.
+     *
+     * @return the thread count.
+     */
+    public int getThreadCount() {
+        return workers.size();
+    }
+
+    /**
+     * Returns the best objective reached by any worker.
+     *
+     * @return the lowest objective across workers.
+     */
+    public double getBestObjective() {
+        Worker best = getBest();
+        best.lock.lock();
+        try {
+            return best.optimizer.getBestObjective();
+        } finally {
+            best.lock.unlock();
+        }
+    }
+
+    /**
+     * Builds a list of Pack objects from the best arrangement found by any worker.
+     *
+     * @return a new list of Pack objects.
+     */
+    public List<Pack> getBestPacks() {
+        Worker best = getBest();
+        best.lock.lock();
+        try {
+            return best.optimizer.toPacks();
+        } finally {
+            best.lock.unlock();
+        }
+    }
+
+    /**
+     * Builds a list of Pack objects from the best arrangement found by any worker, in ascending
+     * order of impedance spread.
+     *
+     * @return a new, sorted list of Pack objects.
+     */
+    public List<Pack> getBestSortedPacks() {
+        Worker best = getBest();
+        best.lock.lock();
+        try {
+            return best.optimizer.toSortedPacks();
+        } finally {
+            best.lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the highest and average pack spread of the best arrangement found by any worker.
+     *
+     * @return a two element array: the highest spread, then the average spread.
+     */
+    public double[] getBestSpreads() {
+        Worker best = getBest();
+        best.lock.lock();
+        try {
+            return new double[]{best.optimizer.getBestHigh(), best.optimizer.getBestAverage()};
+        } finally {
+            best.lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the total number of steps performed by every worker.
+     *
+     * @return the iteration count.
+     */
+    public long getIterations() {
+        long iterations = 0;
+        for (Worker worker : workers) {
+            worker.lock.lock();
+            try {
+                iterations += worker.optimizer.getIterations();
+            } finally {
+                worker.lock.unlock();
+            }
+        }
+        return iterations;
+    }
+
+    /**
+     * Records a sample of the search in a set of metrics. Each worker is held only while its
+     * counters are read.
+     *
+     * @param metrics the metrics to record into.
+     * @param previousIterations the steps performed before this search started, when resumed.
+     */
+    public void sample(OptimizerMetrics metrics, long previousIterations) {
+        long iterations = previousIterations;
+        long accepted = 0;
+        long failedAttempts = 0;
+        double best = Double.MAX_VALUE;
+        double current = Double.MAX_VALUE;
+        for (Worker worker : workers) {
+            worker.lock.lock();
+            try {
+                iterations += worker.optimizer.getIterations();
+                accepted += worker.optimizer.getAcceptedSteps();
+                failedAttempts = Math.max(failedAttempts, worker.completeCounter);
+                if (worker.optimizer.getBestObjective() < best) {
+                    best = worker.optimizer.getBestObjective();
+                    current = worker.optimizer.getObjective();
+                }
+            } finally {
+                worker.lock.unlock();
+            }
+        }
+        metrics.sample(iterations, accepted, best, current, failedAttempts, getWorkerThreadIds());
+    }
+
+    /**
+     * Returns the IDs of the threads running the workers that have started.
+     *
+     * @return the thread IDs.
+     */
+    public long[] getWorkerThreadIds() {
+        return workers.stream().mapToLong((worker) -> worker.threadId).filter((id) -> id != 0).toArray();
+    }
+
+    /**
+     * Captures the best arrangement found by any worker, together with that worker's random number
+     * state, in a Checkpoint. Only the best worker is held while its arrangement is copied.
+     *
+     * @param previousIterations the steps performed before this search started, when resumed.
+     * @return a new checkpoint.
+     */
+    public Checkpoint checkpoint(long previousIterations) {
+        long iterations = previousIterations + getIterations();
+        Worker best = getBest();
+        best.lock.lock();
+        try {
+            return new Checkpoint(mode, best.optimizer.toPacks(), best.optimizer.getBestObjective(),
+                    iterations, best.optimizer.getRandomState());
+        } finally {
+            best.lock.unlock();
+        }
+    }
+
+    /**
+     * Creates a fixed pool of named daemon threads for optimizer workers.
+     *
+     * @param threadCount the number of threads.
+     * @param name the prefix of the thread names.
+     * @return the new executor.
+     */
+    static ExecutorService newWorkerPool(int threadCount, String name) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return Executors.newFixedThreadPool(threadCount, r -> {
+            Thread t = new Thread(r, name + threadNumber.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    private Worker getBest() {
+        Worker best = null;
+        double bestObjective = Double.MAX_VALUE;
+        for (Worker worker : workers) {
+            double objective;
+            worker.lock.lock();
+            try {
+                objective = worker.optimizer.getBestObjective();
+            } finally {
+                worker.lock.unlock();
+            }
+            if (best == null || objective < bestObjective) {
+                best = worker;
+                bestObjective = objective;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * A single search worker. The optimizer is held locked while a batch of steps runs so that it
+     * is only ever read in a consistent state. The lock is fair: a worker would otherwise take it
+     * straight back after every batch and starve the thread reading its results.
+     */
+    private final class Worker implements Runnable {
+
+        private final LotOptimizer optimizer;
+        private final ReentrantLock lock = new ReentrantLock(true);
+        private int optimizedStandard;
+        private int completeCounter; //Guarded by lock.
+        private volatile long threadId;
+
+        private Worker(LotOptimizer optimizer) {
+            this.optimizer = optimizer;
+        }
+
+        @Override
+        public void run() {
+            threadId = Thread.currentThread().getId();
+            boolean complete = false;
+            try {
+                while (running && !complete) {
+                    lock.lock();
+                    try {
+                        for (int i = 0; i < BATCH && !complete; i++) {
+                            if (optimizer.step()) {
+                                completeCounter = 0;
+                            } else {
+                                completeCounter++;
+                            }
+                            complete = completeCounter > optimizedStandard && optimizer.isCooled();
+                        }
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+            } catch (Exception ex) {
+                ExceptionHandler.logEvent(Level.SEVERE, ex.getMessage(), ex);
+            } finally {
+                finished.countDown();
+            }
+        }
+    }
+}
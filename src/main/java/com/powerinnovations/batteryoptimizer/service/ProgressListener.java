@@ -0,0 +1,19 @@
+package com.powerinnovations.batteryoptimizer.service;
+
+/**
+ * Receives progress updates from long running operations such as loading or exporting a lot.
+ *
+ * @author robbi.mount
+ */
+@FunctionalInterface
+public interface ProgressListener {
+
+    /**
+     * Called as work is completed. Implementations should return quickly, as they are called from
+     * the thread doing the work.
+     *
+     * @param done the amount of work completed.
+     * @param total the total amount of work.
+     */
+    public void progress(long done, long total);
+}
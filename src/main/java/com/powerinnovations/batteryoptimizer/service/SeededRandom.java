@@ -0,0 +1,159 @@
+package com.powerinnovations.batteryoptimizer.service;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A fast, splittable random number generator whose state can be saved and restored. It uses the
+ * same SplitMix64 algorithm as java.util.SplittableRandom, but exposes its seed and gamma so that
+ * an optimizer checkpoint can resume the exact random sequence. Like SplittableRandom, an instance
+ * must not be shared between threads; use split() to give each thread its own.
+ *
+ * @author robbi.mount
+ */
+public final class SeededRandom {
+
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+    private static final double DOUBLE_UNIT = 0x1.0p-53;
+
+    private long seed;
+    private final long gamma;
+
+    /**
+     * Constructs a generator with an unpredictable seed.
+     */
+    public SeededRandom() {
+        this(ThreadLocalRandom.current().nextLong());
+    }
+
+    /**
+     * Constructs a generator from a seed. Generators built from the same seed produce the same
+     * sequence.
+     *
+     * @param seed the initial seed.
+     */
+    public SeededRandom(long seed) {
+        this(seed, GOLDEN_GAMMA);
+    }
+
+    /**
+     * Restores a generator from a saved state.
+     *
+     * @param seed the seed, as returned by getSeed().
+     * @param gamma the gamma, as returned by getGamma().
+     */
+    public SeededRandom(long seed, long gamma) {
+        if ((gamma & 1L) == 0) {
+            throw new IllegalArgumentException("The gamma of a generator must be odd.");
+        }
+        this.seed = seed;
+        this.gamma = gamma;
+    }
+
+    /**
+     * Constructs a new generator that shares no state with this one. Its sequence is determined by
+     * the state of this generator, so splitting is reproducible.
+     *
+     * @return a new generator.
+     */
+    public SeededRandom split() {
+        return new SeededRandom(nextLong(), mixGamma(nextSeed()));
+    }
+
+    /**
+     * Returns a copy of this generator that will produce the same sequence.
+     *
+     * @return a new generator in the same state.
+     */
+    public SeededRandom copy() {
+        return new SeededRandom(seed, gamma);
+    }
+
+    /**
+     * Returns the current seed, for saving the state of the generator.
+     *
+     * @return the seed.
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Returns the gamma, for saving the state of the generator.
+     *
+     * @return the gamma.
+     */
+    public long getGamma() {
+        return gamma;
+    }
+
+    /**
+     * Returns a pseudorandom long.
+     *
+     * @return the next value.
+     */
+    public long nextLong() {
+        return mix64(nextSeed());
+    }
+
+    /**
+     * Returns a pseudorandom int between 0 (inclusive) and the bound (exclusive).
+     *
+     * @param bound the upper bound, which must be positive.
+     * @return the next value.
+     */
+    public int nextInt(int bound) {
+        if (bound <= 0) {
+            throw new IllegalArgumentException("The bound must be positive.");
+        }
+        int r = mix32(nextSeed());
+        int m = bound - 1;
+        if ((bound & m) == 0) {
+            r &= m;
+        } else {
+            for (int u = r >>> 1; u + m - (r = u % bound) < 0; u = mix32(nextSeed()) >>> 1) {
+            }
+        }
+        return r;
+    }
+
+    /**
+     * Returns a pseudorandom double between 0 (inclusive) and 1 (exclusive).
+     *
+     * @return the next value.
+     */
+    public double nextDouble() {
+        return (mix64(nextSeed()) >>> 11) * DOUBLE_UNIT;
+    }
+
+    /**
+     * Returns a pseudorandom boolean.
+     *
+     * @return the next value.
+     */
+    public boolean nextBoolean() {
+        return mix32(nextSeed()) < 0;
+    }
+
+    private long nextSeed() {
+        return seed += gamma;
+    }
+
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    private static int mix32(long z) {
+        z = (z ^ (z >>> 33)) * 0x62a9d9ed799705f5L;
+        return (int) (((z ^ (z >>> 28)) * 0xcb24d0a5c88c35b3L) >>> 32);
+    }
+
+    private static long mixGamma(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        z = (z ^ (z >>> 33)) | 1L;
+        int n = Long.bitCount(z ^ (z >>> 1));
+        return (n < 24) ? z ^ 0xaaaaaaaaaaaaaaaaL : z;
+    }
+}
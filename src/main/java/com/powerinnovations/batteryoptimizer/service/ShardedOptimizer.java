@@ -0,0 +1,200 @@
+package com.powerinnovations.batteryoptimizer.service;
+
+import com.powerinnovations.batteryoptimizer.model.Cell;
+import com.powerinnovations.batteryoptimizer.model.Pack;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Level;
+
+/**
+ * Optimizes very large lots by splitting them into shards. The packs are ordered by average
+ * impedance and cut into bands of packsPerShard packs; cells only ever need to move between packs
+ * of similar impedance, so each band can be optimized on its own, in parallel, with a small
+ * LotOptimizer. A lot that has not been optimized yet is first rebuilt from its cells sorted by
+ * impedance, which gives every band a narrow range of cells to work with.
+ *
+ * A single pass cannot move a cell across a band boundary, so a second, stitching pass re-cuts the
+ * packs (ordered by average impedance) into shards offset by half a shard. Each shard of the
+ * stitching pass overlaps two bands of the first and optimizes across their shared boundary. The
+ * result is a single arrangement of the whole lot.
+ *
+ * The shards only check a volatile flag, once every batch of steps. The running condition given to
+ * optimize() is polled by the calling thread alone, which sets that flag. One lot is optimized at
+ * a time.
+ *
+ * @author robbi.mount
+ */
+public class ShardedOptimizer {
+
+    private static final long POLL_INTERVAL = 10; //Milliseconds between checks of the running condition.
+
+    private final OptimizationMode mode;
+    private final Objective objective;
+    private final Set<Move> moves;
+    private final AnnealingSchedule schedule;
+    private final int packsPerShard;
+    private final int threadCount;
+    private final SeededRandom random;
+    private volatile boolean stopped;
+
+    /**
+     * Constructs a sharded optimizer.
+     *
+     * @param mode the method of optimization used within each shard.
+     * @param objective the metric to minimize within each shard.
+     * @param moves the kinds of move made within each shard.
+     * @param schedule the temperature schedule, used in simulated annealing mode only.
+     * @param packsPerShard the number of packs in each shard, at least 2.
+     * @param threadCount the number of shards optimized at once.
+     * @param random the source the shards' random number generators are split from.
+     */
+    public ShardedOptimizer(OptimizationMode mode, Objective objective, Set<Move> moves, AnnealingSchedule schedule,
+            int packsPerShard, int threadCount, SeededRandom random) {
+        if (packsPerShard < 2) {
+            throw new IllegalArgumentException("A shard must contain at least two packs.");
+        }
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("At least one optimizer thread is required.");
+        }
+        this.mode = mode;
+        this.objective = objective;
+        this.moves = moves;
+        this.schedule = schedule;
+        this.packsPerShard = packsPerShard;
+        this.threadCount = threadCount;
+        this.random = random;
+    }
+
+    /**
+     * Optimizes a lot shard by shard. Every shard runs until its annealing schedule (if any) has
+     * cooled and optimizedStandard consecutive attempts have failed to improve it, or until the
+     * running condition turns false, in which case the best arrangements found so far are kept and
+     * the stitching pass is skipped.
+     *
+     * @param packList the lot to optimize. Every pack must hold the same number of cells.
+     * @param optimizedStandard the number of consecutive failed improvement attempts after which a
+     * shard is considered optimized.
+     * @param running polled by the calling thread every POLL_INTERVAL milliseconds; the optimization
+     * stops once it returns false.
+     * @return the optimized lot in order of impedance band. The given pack IDs are kept, unless the
+     * lot had to be rebuilt from its sorted cells, in which case they are numbered from 0.
+     */
+    public List<Pack> optimize(List<Pack> packList, int optimizedStandard, BooleanSupplier running) {
+        stopped = false;
+        List<Pack> packs = cutSorted(packList);
+        if (!(objective.evaluate(packs) < objective.evaluate(packList))) {
+            //The lot is already better than a plain cut, for example when resuming: build on it.
+            packs = new ArrayList<>(packList);
+            packs.sort(Comparator.comparingDouble(Pack::getAverageImp));
+        }
+
+        ExecutorService executor = ParallelOptimizer.newWorkerPool(threadCount, "optimizer-shard-");
+        try {
+            packs = pass(executor, packs, 0, optimizedStandard, running);
+            if (!stopped && running.getAsBoolean() && packs.size() > packsPerShard) {
+                packs.sort(Comparator.comparingDouble(Pack::getAverageImp));
+                packs = pass(executor, packs, packsPerShard / 2, optimizedStandard, running);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return packs;
+    }
+
+    /**
+     * Cuts the cells of a lot, sorted by impedance, into packs of consecutive cells.
+     */
+    private static List<Pack> cutSorted(List<Pack> packList) {
+        int cellsPerPack = packList.get(0).getCellCount();
+        List<Cell> cells = new ArrayList<>();
+        packList.stream().forEach((pack) -> {
+            cells.addAll(pack.getCells());
+        });
+        cells.sort(Comparator.comparingDouble(Cell::getImpedance));
+
+        List<Pack> packs = new ArrayList<>(packList.size());
+        for (int p = 0; p < packList.size(); p++) {
+            Pack pack = new Pack(Integer.toString(p));
+            for (Cell c : cells.subList(p * cellsPerPack, (p + 1) * cellsPerPack)) {
+                pack.addCell(c);
+            }
+            packs.add(pack);
+        }
+        return packs;
+    }
+
+    /**
+     * Optimizes consecutive shards of a list of packs in parallel.
+     *
+     * @param offset the size of the first shard, or 0 for a full first shard.
+     * @return the packs of every shard, in shard order.
+     */
+    private List<Pack> pass(ExecutorService executor, List<Pack> packs, int offset, int optimizedStandard,
+            BooleanSupplier running) {
+        List<Future<List<Pack>>> shards = new ArrayList<>();
+        int start = 0;
+        int end = offset > 0 ? offset : packsPerShard;
+        while (start < packs.size()) {
+            end = Math.min(end, packs.size());
+            List<Pack> shard = new ArrayList<>(packs.subList(start, end));
+            SeededRandom shardRandom = random.split();
+            shards.add(executor.submit(() -> optimizeShard(shard, shardRandom, optimizedStandard)));
+            start = end;
+            end = start + packsPerShard;
+        }
+
+        List<Pack> result = new ArrayList<>(packs.size());
+        for (Future<List<Pack>> shard : shards) {
+            try {
+                while (true) {
+                    try {
+                        result.addAll(shard.get(POLL_INTERVAL, TimeUnit.MILLISECONDS));
+                        break;
+                    } catch (TimeoutException ex) {
+                        if (!stopped && !running.getAsBoolean()) {
+                            stopped = true;
+                        }
+                    }
+                }
+            } catch (ExecutionException ex) {
+                throw new IllegalStateException("A shard failed to optimize.", ex.getCause());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while optimizing shards.", ex);
+            }
+        }
+        return result;
+    }
+
+    private List<Pack> optimizeShard(List<Pack> shard, SeededRandom shardRandom, int optimizedStandard) {
+        if (shard.size() < 2) {
+            return shard;
+        }
+        LotOptimizer optimizer = new LotOptimizer(shard, mode, objective, moves, schedule, shardRandom);
+        int completeCounter = 0;
+        boolean complete = false;
+        try {
+            while (!stopped && !complete) {
+                for (int i = 0; i < ParallelOptimizer.BATCH && !complete; i++) {
+                    if (optimizer.step()) {
+                        completeCounter = 0;
+                    } else {
+                        completeCounter++;
+                    }
+                    complete = completeCounter > optimizedStandard && optimizer.isCooled();
+                }
+            }
+        } catch (Exception ex) {
+            ExceptionHandler.logEvent(Level.SEVERE, ex.getMessage(), ex);
+        }
+        return optimizer.toPacks();
+    }
+}
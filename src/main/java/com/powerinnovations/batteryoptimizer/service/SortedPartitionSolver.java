@@ -0,0 +1,159 @@
+package com.powerinnovations.batteryoptimizer.service;
+
+import com.powerinnovations.batteryoptimizer.model.Cell;
+import com.powerinnovations.batteryoptimizer.model.Pack;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A deterministic solver for the min-max spread objective. Once the cells are sorted by impedance,
+ * a pack made of consecutive cells has the smallest possible range for its position, so the solver
+ * only considers packs that are contiguous windows of the sorted cells.
+ *
+ * The solver binary searches the spread limit over the spreads of every window. For a given limit
+ * it scans the sorted cells and greedily takes the earliest window within the limit that does not
+ * overlap the last one taken; taking the earliest-ending window maximizes the number of disjoint
+ * windows, so the smallest limit that yields enough packs is the optimum over contiguous windows.
+ * The whole solve is O(n log n).
+ *
+ * When the cells divide exactly into packs the result is the sorted lot cut into consecutive
+ * packs. When there are spare cells the solver leaves out the cells that fit worst, and they are
+ * reported as unassigned.
+ *
+ * @author robbi.mount
+ */
+public class SortedPartitionSolver {
+
+    private final Cell[] sorted;
+    private final int cellsPerPack;
+    private final double[] windowSpread;
+    private final List<Cell> unassigned;
+    private double maxSpread;
+
+    /**
+     * Constructs a solver over the given cells.
+     *
+     * @param cells the cells to partition.
+     * @param cellsPerPack the desired number of cells per pack.
+     */
+    public SortedPartitionSolver(List<Cell> cells, int cellsPerPack) {
+        if (cellsPerPack < 1) {
+            throw new IllegalArgumentException("A pack must contain at least one cell.");
+        }
+        this.sorted = cells.toArray(new Cell[cells.size()]);
+        Arrays.sort(sorted);
+        this.cellsPerPack = cellsPerPack;
+        this.unassigned = new ArrayList<>();
+
+        //Prefix sums give the average of any window in constant time.
+        double[] prefix = new double[sorted.length + 1];
+        for (int i = 0; i < sorted.length; i++) {
+            prefix[i + 1] = prefix[i] + sorted[i].getImpedance();
+        }
+        int windows = Math.max(0, sorted.length - cellsPerPack + 1);
+        this.windowSpread = new double[windows];
+        for (int i = 0; i < windows; i++) {
+            double average = (prefix[i + cellsPerPack] - prefix[i]) / cellsPerPack;
+            windowSpread[i] = (sorted[i + cellsPerPack - 1].getImpedance() - sorted[i].getImpedance()) / average;
+        }
+    }
+
+    /**
+     * Builds as many packs as the cells allow.
+     *
+     * @return the packs, in ascending order of impedance.
+     */
+    public List<Pack> solve() {
+        return solve(sorted.length / cellsPerPack);
+    }
+
+    /**
+     * Builds the given number of packs, choosing the cells so that the highest pack spread is as
+     * low as possible. Cells left out are available from getUnassigned().
+     *
+     * @param packCount the number of packs to build.
+     * @return the packs, in ascending order of impedance, with IDs numbered from 0.
+     * @throws IllegalArgumentException if there are not enough cells for the packs.
+     */
+    public List<Pack> solve(int packCount) throws IllegalArgumentException {
+        if ((long) packCount * cellsPerPack > sorted.length) {
+            throw new IllegalArgumentException("Not enough cells are provided for " + packCount + " packs.");
+        }
+        unassigned.clear();
+        List<Pack> packs = new ArrayList<>(packCount);
+        if (packCount == 0) {
+            unassigned.addAll(Arrays.asList(sorted));
+            maxSpread = 0;
+            return packs;
+        }
+
+        //Binary search the candidate limits for the lowest one that still yields enough packs.
+        double[] limits = windowSpread.clone();
+        Arrays.sort(limits);
+        int lo = 0;
+        int hi = limits.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (countWindows(limits[mid], packCount) >= packCount) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        maxSpread = limits[lo];
+
+        //Replay the greedy scan at that limit to build the packs.
+        int i = 0;
+        while (i < sorted.length) {
+            if (packs.size() < packCount && i < windowSpread.length && windowSpread[i] <= maxSpread) {
+                Pack p = new Pack(Integer.toString(packs.size()));
+                for (int j = i; j < i + cellsPerPack; j++) {
+                    p.addCell(sorted[j]);
+                }
+                packs.add(p);
+                i += cellsPerPack;
+            } else {
+                unassigned.add(sorted[i]);
+                i++;
+            }
+        }
+        return packs;
+    }
+
+    /**
+     * Returns the cells left out of the packs by the last solve.
+     *
+     * @return the unassigned cells, in ascending order of impedance.
+     */
+    public List<Cell> getUnassigned() {
+        return new ArrayList<>(unassigned);
+    }
+
+    /**
+     * Returns the highest pack spread of the last solve.
+     *
+     * @return the highest pack spread.
+     */
+    public double getMaxSpread() {
+        return maxSpread;
+    }
+
+    /**
+     * Counts the disjoint windows the greedy scan takes under a spread limit, stopping early once
+     * enough are found.
+     */
+    private int countWindows(double limit, int needed) {
+        int count = 0;
+        int i = 0;
+        while (i < windowSpread.length && count < needed) {
+            if (windowSpread[i] <= limit) {
+                count++;
+                i += cellsPerPack;
+            } else {
+                i++;
+            }
+        }
+        return count;
+    }
+}
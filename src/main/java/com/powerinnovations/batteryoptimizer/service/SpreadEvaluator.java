@@ -0,0 +1,200 @@
+package com.powerinnovations.batteryoptimizer.service;
+
+import com.powerinnovations.batteryoptimizer.model.Pack;
+import java.util.List;
+
+/**
+ * Keeps running aggregates of the impedance spreads of an entire lot of packs. A candidate swap
+ * only changes two packs, so it can be scored from the before and after spreads of those two packs
+ * instead of recalculating the spread of every pack in the lot.
+ *
+ * Packs are referred to by their index within the lot the evaluator was built from. The spreads
+ * are also held in a SpreadIndex so the highest and lowest packs, and the rank of any pack, are
+ * found in O(log n).
+ *
+ * The values need not be spreads: the optimizer records whatever pack score its Objective uses,
+ * and the aggregates apply to those scores alike.
+ *
+ * @author robbi.mount
+ */
+public class SpreadEvaluator {
+
+    private static final int UPDATE_COST = 4; //Cost of an index update relative to a query, which does not restructure the tree.
+    private static final int RESUM_INTERVAL = 1 << 16; //Updates between exact recalculations of the running sum.
+
+    private final double[] spreads;
+    private final SpreadIndex index;
+    private final int depth; //Typical number of index nodes visited by an update or query.
+    private double sum;
+    private int updates;
+    private long work;
+
+    /**
+     * Constructs an evaluator for a lot of the given size with every spread set to zero.
+     *
+     * @param packCount the number of packs in the lot.
+     */
+    public SpreadEvaluator(int packCount) {
+        if (packCount < 1) {
+            throw new IllegalArgumentException("A lot must contain at least one pack.");
+        }
+        this.spreads = new double[packCount];
+        this.index = new SpreadIndex(packCount);
+        this.depth = 32 - Integer.numberOfLeadingZeros(packCount);
+    }
+
+    /**
+     * Constructs an evaluator seeded with the current spreads of the given packs.
+     *
+     * @param packList the list of Pack objects, in lot order.
+     */
+    public SpreadEvaluator(List<Pack> packList) {
+        this(packList.size());
+        for (int i = 0; i < spreads.length; i++) {
+            spreads[i] = packList.get(i).calculateSpreadImp();
+            index.update(i, spreads[i]);
+        }
+        resum();
+    }
+
+    /**
+     * Records a new spread for a pack and updates the running aggregates.
+     *
+     * @param pack the pack index.
+     * @param spread the new impedance spread of the pack.
+     */
+    public void setSpread(int pack, double spread) {
+        sum += spread - spreads[pack];
+        spreads[pack] = spread;
+        index.update(pack, spread);
+        work += UPDATE_COST * depth;
+        if (++updates > RESUM_INTERVAL) {
+            resum();
+        }
+    }
+
+    /**
+     * Returns the last recorded spread of a pack.
+     *
+     * @param pack the pack index.
+     * @return the impedance spread of the pack.
+     */
+    public double getSpread(int pack) {
+        return spreads[pack];
+    }
+
+    /**
+     * Returns the number of packs in the lot.
+     *
+     * @return the pack count.
+     */
+    public int getPackCount() {
+        return spreads.length;
+    }
+
+    /**
+     * Returns the average pack spread of the lot.
+     *
+     * @return the average pack spread.
+     */
+    public double getAverage() {
+        return sum / spreads.length;
+    }
+
+    /**
+     * Returns the highest pack spread of the lot.
+     *
+     * @return the highest pack spread.
+     */
+    public double getHigh() {
+        return spreads[getHighestPack()];
+    }
+
+    /**
+     * Returns the lowest pack spread of the lot.
+     *
+     * @return the lowest pack spread.
+     */
+    public double getLow() {
+        return spreads[index.getLowest()];
+    }
+
+    /**
+     * Returns the index of the pack with the highest spread.
+     *
+     * @return the index of the worst pack.
+     */
+    public int getHighestPack() {
+        work += depth;
+        return index.getHighest();
+    }
+
+    /**
+     * Returns the rank of a pack within the lot, where rank 0 has the lowest spread.
+     *
+     * @param pack the pack index.
+     * @return the rank of the pack.
+     */
+    public int getRank(int pack) {
+        return index.rank(pack);
+    }
+
+    /**
+     * Returns the pack indices in ascending order of spread.
+     *
+     * @return a new array of pack indices.
+     */
+    public int[] getSortedOrder() {
+        return index.sortedOrder(new int[spreads.length]);
+    }
+
+    /**
+     * Returns the number of index nodes the evaluator has visited so far, estimated from the depth
+     * of the index. Like PackLayout.getWork(), it measures work in a way that is the same on
+     * every run.
+     *
+     * @return the work done.
+     */
+    public long getWork() {
+        return work;
+    }
+
+    /**
+     * Scores a swap between two packs against the average spread of the lot.
+     *
+     * @param a the index of the first pack.
+     * @param spreadA the spread of the first pack after the swap.
+     * @param b the index of the second pack.
+     * @param spreadB the spread of the second pack after the swap.
+     * @return the average pack spread the lot would have after the swap.
+     */
+    public double averageAfterSwap(int a, double spreadA, int b, double spreadB) {
+        return (sum - spreads[a] - spreads[b] + spreadA + spreadB) / spreads.length;
+    }
+
+    /**
+     * Scores a swap between two packs against the highest spread of the lot.
+     *
+     * @param a the index of the first pack.
+     * @param spreadA the spread of the first pack after the swap.
+     * @param b the index of the second pack.
+     * @param spreadB the spread of the second pack after the swap.
+     * @return the highest pack spread the lot would have after the swap.
+     */
+    public double highAfterSwap(int a, double spreadA, int b, double spreadB) {
+        work += depth;
+        return Math.max(Math.max(spreadA, spreadB), index.highestExcluding(a, b));
+    }
+
+    /**
+     * Recalculates the running sum exactly to discard accumulated floating point drift.
+     */
+    private void resum() {
+        double total = 0;
+        for (double spread : spreads) {
+            total += spread;
+        }
+        sum = total;
+        updates = 0;
+    }
+}
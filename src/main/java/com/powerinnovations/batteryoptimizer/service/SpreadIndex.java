@@ -0,0 +1,293 @@
+package com.powerinnovations.batteryoptimizer.service;
+
+/**
+ * An ordered index of the packs of a lot keyed on their cached impedance spread. The index is a
+ * randomized balanced search tree (treap) held entirely in primitive arrays, with each node being
+ * a pack index. Ties between equal spreads are broken by pack index so the order is total.
+ *
+ * Updating the spread of a pack, finding the best or worst pack and rank queries are all
+ * O(log n), and a sorted iteration order can be produced in O(n). No allocation takes place after
+ * construction.
+ *
+ * @author robbi.mount
+ */
+public class SpreadIndex {
+
+    private static final int NONE = -1;
+
+    private final double[] key;
+    private final int[] priority;
+    private final int[] left;
+    private final int[] right;
+    private final int[] size;
+    private final int[] stack;
+    private int root = NONE;
+
+    //Results of the last split.
+    private int splitLeft;
+    private int splitRight;
+
+    /**
+     * Constructs an index over a lot of the given size with every spread set to zero.
+     *
+     * @param packCount the number of packs in the lot.
+     */
+    public SpreadIndex(int packCount) {
+        this.key = new double[packCount];
+        this.priority = new int[packCount];
+        this.left = new int[packCount];
+        this.right = new int[packCount];
+        this.size = new int[packCount];
+        this.stack = new int[packCount];
+        for (int p = 0; p < packCount; p++) {
+            priority[p] = mix(p);
+            left[p] = NONE;
+            right[p] = NONE;
+            size[p] = 1;
+            root = insert(root, p);
+        }
+    }
+
+    /**
+     * Returns the number of packs in the index.
+     *
+     * @return the pack count.
+     */
+    public int getPackCount() {
+        return key.length;
+    }
+
+    /**
+     * Changes the spread a pack is keyed on and moves it to its new position.
+     *
+     * @param pack the pack index.
+     * @param spread the new impedance spread of the pack.
+     */
+    public void update(int pack, double spread) {
+        if (key[pack] == spread) {
+            return;
+        }
+        root = erase(root, pack);
+        key[pack] = spread;
+        left[pack] = NONE;
+        right[pack] = NONE;
+        size[pack] = 1;
+        root = insert(root, pack);
+    }
+
+    /**
+     * Returns the spread a pack is currently keyed on.
+     *
+     * @param pack the pack index.
+     * @return the impedance spread.
+     */
+    public double getSpread(int pack) {
+        return key[pack];
+    }
+
+    /**
+     * Returns the pack with the highest spread.
+     *
+     * @return the index of the worst pack.
+     */
+    public int getHighest() {
+        int node = root;
+        while (right[node] != NONE) {
+            node = right[node];
+        }
+        return node;
+    }
+
+    /**
+     * Returns the pack with the lowest spread.
+     *
+     * @return the index of the best pack.
+     */
+    public int getLowest() {
+        int node = root;
+        while (left[node] != NONE) {
+            node = left[node];
+        }
+        return node;
+    }
+
+    /**
+     * Returns the pack at a given rank, where rank 0 has the lowest spread.
+     *
+     * @param rank the rank, from 0 to the pack count - 1.
+     * @return the pack index.
+     */
+    public int select(int rank) {
+        if (rank < 0 || rank >= key.length) {
+            throw new IndexOutOfBoundsException("Rank " + rank + " is outside the lot.");
+        }
+        int node = root;
+        while (true) {
+            int leftSize = sizeOf(left[node]);
+            if (rank < leftSize) {
+                node = left[node];
+            } else if (rank > leftSize) {
+                rank -= leftSize + 1;
+                node = right[node];
+            } else {
+                return node;
+            }
+        }
+    }
+
+    /**
+     * Returns the rank of a pack, where rank 0 has the lowest spread.
+     *
+     * @param pack the pack index.
+     * @return the rank of the pack.
+     */
+    public int rank(int pack) {
+        int rank = 0;
+        int node = root;
+        while (node != pack) {
+            if (less(pack, node)) {
+                node = left[node];
+            } else {
+                rank += sizeOf(left[node]) + 1;
+                node = right[node];
+            }
+        }
+        return rank + sizeOf(left[node]);
+    }
+
+    /**
+     * Returns the highest spread among all packs other than the two given.
+     *
+     * @param a the first excluded pack.
+     * @param b the second excluded pack.
+     * @return the highest remaining spread, or 0 if no other pack exists.
+     */
+    public double highestExcluding(int a, int b) {
+        for (int rank = key.length - 1; rank >= 0 && rank >= key.length - 3; rank--) {
+            int pack = select(rank);
+            if (pack != a && pack != b) {
+                return key[pack];
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Writes the pack indices in ascending order of spread.
+     *
+     * @param order an array at least as long as the pack count.
+     * @return the order array.
+     */
+    public int[] sortedOrder(int[] order) {
+        int depth = 0;
+        int count = 0;
+        int node = root;
+        while (node != NONE || depth > 0) {
+            while (node != NONE) {
+                stack[depth++] = node;
+                node = left[node];
+            }
+            node = stack[--depth];
+            order[count++] = node;
+            node = right[node];
+        }
+        return order;
+    }
+
+    private boolean less(int a, int b) {
+        return key[a] < key[b] || (key[a] == key[b] && a < b);
+    }
+
+    private int sizeOf(int node) {
+        return node == NONE ? 0 : size[node];
+    }
+
+    private void resize(int node) {
+        size[node] = 1 + sizeOf(left[node]) + sizeOf(right[node]);
+    }
+
+    private int insert(int tree, int node) {
+        if (tree == NONE) {
+            return node;
+        }
+        if (priority[node] > priority[tree]) {
+            split(tree, node);
+            left[node] = splitLeft;
+            right[node] = splitRight;
+            resize(node);
+            return node;
+        }
+        if (less(node, tree)) {
+            left[tree] = insert(left[tree], node);
+        } else {
+            right[tree] = insert(right[tree], node);
+        }
+        resize(tree);
+        return tree;
+    }
+
+    private int erase(int tree, int node) {
+        if (tree == node) {
+            return merge(left[tree], right[tree]);
+        }
+        if (less(node, tree)) {
+            left[tree] = erase(left[tree], node);
+        } else {
+            right[tree] = erase(right[tree], node);
+        }
+        resize(tree);
+        return tree;
+    }
+
+    /**
+     * Splits a tree into the nodes ordered before the given node (splitLeft) and the rest
+     * (splitRight).
+     */
+    private void split(int tree, int node) {
+        if (tree == NONE) {
+            splitLeft = NONE;
+            splitRight = NONE;
+        } else if (less(tree, node)) {
+            split(right[tree], node);
+            right[tree] = splitLeft;
+            resize(tree);
+            splitLeft = tree;
+        } else {
+            split(left[tree], node);
+            left[tree] = splitRight;
+            resize(tree);
+            splitRight = tree;
+        }
+    }
+
+    /**
+     * Joins two trees where every node of the first is ordered before every node of the second.
+     */
+    private int merge(int a, int b) {
+        if (a == NONE) {
+            return b;
+        }
+        if (b == NONE) {
+            return a;
+        }
+        if (priority[a] > priority[b]) {
+            right[a] = merge(right[a], b);
+            resize(a);
+            return a;
+        }
+        left[b] = merge(a, left[b]);
+        resize(b);
+        return b;
+    }
+
+    /**
+     * A fixed hash of the pack index used as its heap priority.
+     */
+    private static int mix(int value) {
+        int h = value * 0x9E3779B9;
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        return h;
+    }
+}
@@ -0,0 +1,138 @@
+package com.powerinnovations.batteryoptimizer.service;
+
+import com.powerinnovations.batteryoptimizer.model.Cell;
+import com.powerinnovations.batteryoptimizer.model.Pack;
+
+/**
+ * The built-in objectives. Each scores packs by one of the impedance spread, the variance or the
+ * standard deviation of the cell impedances, or their squared deviation from the pack mean, and
+ * combines the pack scores by the highest, the mean or the total. Every one of them scores a swap
+ * in constant time.
+ *
+ * @author robbi.mount
+ */
+public enum StandardObjective implements Objective {
+
+    /**
+     * The highest pack spread, (high - low) / average. The objective of HIGH_CENTERED and
+     * SIMULATED_ANNEALING mode.
+     */
+    MAX_SPREAD(Metric.SPREAD, Aggregate.MAX),
+    /**
+     * The mean pack spread. The objective of TRULY_RANDOM mode.
+     */
+    MEAN_SPREAD(Metric.SPREAD, Aggregate.MEAN),
+    /**
+     * The highest standard deviation of the cell impedances within a pack.
+     */
+    MAX_STD_DEV(Metric.STD_DEV, Aggregate.MAX),
+    /**
+     * The mean standard deviation of the cell impedances within a pack.
+     */
+    MEAN_STD_DEV(Metric.STD_DEV, Aggregate.MEAN),
+    /**
+     * The mean variance of the cell impedances within a pack.
+     */
+    VARIANCE(Metric.VARIANCE, Aggregate.MEAN),
+    /**
+     * The total, over every cell of the lot, of the squared deviation of its impedance from the
+     * mean of its pack.
+     */
+    SUM_OF_SQUARES(Metric.SQUARES, Aggregate.TOTAL);
+
+    private enum Metric {
+        SPREAD, VARIANCE, STD_DEV, SQUARES
+    }
+
+    private enum Aggregate {
+        MAX, MEAN, TOTAL
+    }
+
+    private final Metric metric;
+    private final Aggregate aggregate;
+
+    StandardObjective(Metric metric, Aggregate aggregate) {
+        this.metric = metric;
+        this.aggregate = aggregate;
+    }
+
+    /**
+     * Returns the objective a mode has always minimized.
+     *
+     * @param mode the method of optimization.
+     * @return MEAN_SPREAD in TRULY_RANDOM mode, otherwise MAX_SPREAD.
+     */
+    public static StandardObjective forMode(OptimizationMode mode) {
+        return mode == OptimizationMode.TRULY_RANDOM ? MEAN_SPREAD : MAX_SPREAD;
+    }
+
+    /**
+     * Returns whether an objective scores packs by their impedance spread, so that packs in order
+     * of score are also in order of spread.
+     *
+     * @param objective the objective.
+     * @return true for MAX_SPREAD and MEAN_SPREAD.
+     */
+    static boolean ranksBySpread(Objective objective) {
+        return objective == MAX_SPREAD || objective == MEAN_SPREAD;
+    }
+
+    @Override
+    public double score(PackLayout layout, int pack) {
+        switch (metric) {
+            case SPREAD:
+                return layout.getSpread(pack);
+            case VARIANCE:
+                return layout.getSquaredDeviation(pack) / layout.getCellsPerPack();
+            case STD_DEV:
+                return Math.sqrt(layout.getSquaredDeviation(pack) / layout.getCellsPerPack());
+            default:
+                return layout.getSquaredDeviation(pack);
+        }
+    }
+
+    @Override
+    public double score(Pack pack) {
+        if (metric == Metric.SPREAD) {
+            return pack.calculateSpreadImp();
+        }
+        double mean = pack.getAverageImp();
+        double squares = 0;
+        for (Cell c : pack.getCells()) {
+            double d = c.getImpedance() - mean;
+            squares += d * d;
+        }
+        switch (metric) {
+            case VARIANCE:
+                return squares / pack.getCellCount();
+            case STD_DEV:
+                return Math.sqrt(squares / pack.getCellCount());
+            default:
+                return squares;
+        }
+    }
+
+    @Override
+    public double evaluate(SpreadEvaluator evaluator) {
+        switch (aggregate) {
+            case MAX:
+                return evaluator.getHigh();
+            case MEAN:
+                return evaluator.getAverage();
+            default:
+                return evaluator.getAverage() * evaluator.getPackCount();
+        }
+    }
+
+    @Override
+    public double evaluateSwap(SpreadEvaluator evaluator, int a, double scoreA, int b, double scoreB) {
+        switch (aggregate) {
+            case MAX:
+                return evaluator.highAfterSwap(a, scoreA, b, scoreB);
+            case MEAN:
+                return evaluator.averageAfterSwap(a, scoreA, b, scoreB);
+            default:
+                return evaluator.averageAfterSwap(a, scoreA, b, scoreB) * evaluator.getPackCount();
+        }
+    }
+}
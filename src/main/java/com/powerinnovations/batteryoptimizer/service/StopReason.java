@@ -0,0 +1,29 @@
+package com.powerinnovations.batteryoptimizer.service;
+
+/**
+ * Why an optimization run stopped.
+ *
+ * @author robbi.mount
+ */
+public enum StopReason {
+    /**
+     * Every worker failed to improve optimizedStandard times in a row, or the shards all finished.
+     */
+    COMPLETE,
+    /**
+     * The time budget of the StoppingRule ran out.
+     */
+    DEADLINE,
+    /**
+     * The best arrangement reached a target spread of the StoppingRule.
+     */
+    TARGET_REACHED,
+    /**
+     * The best objective improved by less than the StoppingRule allows over its plateau window.
+     */
+    PLATEAU,
+    /**
+     * The run was paused by the user.
+     */
+    PAUSED
+}
@@ -0,0 +1,245 @@
+package com.powerinnovations.batteryoptimizer.service;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Describes when an optimization run stops. A run stops as soon as any enabled condition holds:
+ * <ul>
+ * <li>the time budget has run out,</li>
+ * <li>the best arrangement's highest or average pack spread is at or below its target,</li>
+ * <li>the best objective has improved by less than plateauImprovement (a fraction of its value)
+ * over the last plateauWindow, or</li>
+ * <li>every worker has failed to improve optimizedStandard times in a row, unless
+ * stopWhenOptimized is turned off.</li>
+ * </ul>
+ * Conditions set to 0 are disabled; by default only the last one is enabled. The best arrangement
+ * found so far is the result whichever condition triggers, so a run can be given a fixed window
+ * and still return its best effort.
+ *
+ * @author robbi.mount
+ */
+public class StoppingRule {
+
+    private long timeBudget = 0;
+    private double targetHighSpread = 0;
+    private double targetAverageSpread = 0;
+    private long plateauWindow = 0;
+    private double plateauImprovement = 0.001;
+    private boolean stopWhenOptimized = true;
+
+    /**
+     * Starts tracking a run against this rule. The clock of the time budget starts now.
+     *
+     * @return a new tracker.
+     */
+    public Tracker start() {
+        return new Tracker();
+    }
+
+    /**
+     * Returns the time budget.
+     *
+     * @return the timeBudget in milliseconds, or 0 for none
+     */
+    public long getTimeBudget() {
+        return timeBudget;
+    }
+
+    /**
+     * Sets the wall-clock time a run may take.
+     *
+     * @param timeBudget the timeBudget to set in milliseconds, or 0 for none
+     */
+    public void setTimeBudget(long timeBudget) {
+        if (timeBudget < 0) {
+            throw new IllegalArgumentException("The time budget must not be negative.");
+        }
+        this.timeBudget = timeBudget;
+    }
+
+    /**
+     * Returns the target highest pack spread.
+     *
+     * @return the targetHighSpread, or 0 for none
+     */
+    public double getTargetHighSpread() {
+        return targetHighSpread;
+    }
+
+    /**
+     * Sets the highest pack spread at which a run stops.
+     *
+     * @param targetHighSpread the targetHighSpread to set, as a fraction (0.01 = 1%), or 0 for none
+     */
+    public void setTargetHighSpread(double targetHighSpread) {
+        if (targetHighSpread < 0) {
+            throw new IllegalArgumentException("The target spread must not be negative.");
+        }
+        this.targetHighSpread = targetHighSpread;
+    }
+
+    /**
+     * Returns the target average pack spread.
+     *
+     * @return the targetAverageSpread, or 0 for none
+     */
+    public double getTargetAverageSpread() {
+        return targetAverageSpread;
+    }
+
+    /**
+     * Sets the average pack spread at which a run stops.
+     *
+     * @param targetAverageSpread the targetAverageSpread to set, as a fraction, or 0 for none
+     */
+    public void setTargetAverageSpread(double targetAverageSpread) {
+        if (targetAverageSpread < 0) {
+            throw new IllegalArgumentException("The target spread must not be negative.");
+        }
+        this.targetAverageSpread = targetAverageSpread;
+    }
+
+    /**
+     * Returns the window over which plateaus are detected.
+     *
+     * @return the plateauWindow in milliseconds, or 0 for none
+     */
+    public long getPlateauWindow() {
+        return plateauWindow;
+    }
+
+    /**
+     * Sets the window over which plateaus are detected.
+     *
+     * @param plateauWindow the plateauWindow to set in milliseconds, or 0 for none
+     */
+    public void setPlateauWindow(long plateauWindow) {
+        if (plateauWindow < 0) {
+            throw new IllegalArgumentException("The plateau window must not be negative.");
+        }
+        this.plateauWindow = plateauWindow;
+    }
+
+    /**
+     * Returns the smallest improvement over the plateau window that keeps a run going.
+     *
+     * @return the plateauImprovement, as a fraction of the best objective
+     */
+    public double getPlateauImprovement() {
+        return plateauImprovement;
+    }
+
+    /**
+     * Sets the smallest improvement over the plateau window that keeps a run going.
+     *
+     * @param plateauImprovement the plateauImprovement to set, as a fraction of the best objective
+     */
+    public void setPlateauImprovement(double plateauImprovement) {
+        if (plateauImprovement < 0) {
+            throw new IllegalArgumentException("The plateau improvement must not be negative.");
+        }
+        this.plateauImprovement = plateauImprovement;
+    }
+
+    /**
+     * Returns whether a run stops once every worker fails to improve optimizedStandard times in a
+     * row.
+     *
+     * @return the stopWhenOptimized
+     */
+    public boolean isStopWhenOptimized() {
+        return stopWhenOptimized;
+    }
+
+    /**
+     * Sets whether a run stops once every worker fails to improve optimizedStandard times in a
+     * row. Turn it off to let the other conditions alone decide.
+     *
+     * @param stopWhenOptimized the stopWhenOptimized to set
+     */
+    public void setStopWhenOptimized(boolean stopWhenOptimized) {
+        this.stopWhenOptimized = stopWhenOptimized;
+    }
+
+    /**
+     * Tracks a single run against the rule. It is used by one thread only.
+     */
+    public final class Tracker {
+
+        private final long start; //System.nanoTime() at the start, immune to wall clock changes.
+        private final ArrayDeque<double[]> history; //{elapsed time, best objective} samples within the plateau window.
+
+        private Tracker() {
+            this.start = System.nanoTime();
+            this.history = new ArrayDeque<>();
+        }
+
+        /**
+         * Returns how long to wait before the next check: the given interval, cut short by the
+         * deadline.
+         *
+         * @param interval the usual time between checks in milliseconds.
+         * @return the time to wait in milliseconds, at least 1.
+         */
+        public long nextWait(long interval) {
+            if (timeBudget == 0) {
+                return interval;
+            }
+            return Math.max(1, Math.min(interval, timeBudget - getElapsed()));
+        }
+
+        /**
+         * Returns the time since the run started.
+         *
+         * @return the elapsed time in milliseconds.
+         */
+        public long getElapsed() {
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        }
+
+        /**
+         * Returns whether the time budget has run out.
+         *
+         * @return true once the deadline has passed.
+         */
+        public boolean isPastDeadline() {
+            return timeBudget > 0 && getElapsed() >= timeBudget;
+        }
+
+        /**
+         * Checks the best arrangement of the run against the rule.
+         *
+         * @param highSpread the highest pack spread of the best arrangement.
+         * @param averageSpread the average pack spread of the best arrangement.
+         * @param objective the objective of the best arrangement.
+         * @return the reason to stop, or null to carry on.
+         */
+        public StopReason check(double highSpread, double averageSpread, double objective) {
+            long now = getElapsed();
+            if (timeBudget > 0 && now >= timeBudget) {
+                return StopReason.DEADLINE;
+            }
+            if ((targetHighSpread > 0 && highSpread <= targetHighSpread)
+                    || (targetAverageSpread > 0 && averageSpread <= targetAverageSpread)) {
+                return StopReason.TARGET_REACHED;
+            }
+            if (plateauWindow > 0) {
+                history.addLast(new double[]{now, objective});
+                //Keep only the newest sample that is at least a window old, and everything after it.
+                while (history.size() > 1) {
+                    double[] oldest = history.pollFirst();
+                    if (now - history.peekFirst()[0] < plateauWindow) {
+                        history.addFirst(oldest);
+                        break;
+                    }
+                }
+                double[] oldest = history.peekFirst();
+                if (now - oldest[0] >= plateauWindow && oldest[1] - objective <= plateauImprovement * oldest[1]) {
+                    return StopReason.PLATEAU;
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package com.powerinnovations.batteryoptimizer.view;
+
+import com.powerinnovations.batteryoptimizer.model.Pack;
+import com.powerinnovations.batteryoptimizer.service.Checkpoint;
+import com.powerinnovations.batteryoptimizer.service.ExceptionHandler;
+import com.powerinnovations.batteryoptimizer.service.ExportFormat;
+import com.powerinnovations.batteryoptimizer.service.Move;
+import com.powerinnovations.batteryoptimizer.service.OptimizationMode;
+import com.powerinnovations.batteryoptimizer.service.OptimizationResult;
+import com.powerinnovations.batteryoptimizer.service.PackUtils;
+import com.powerinnovations.batteryoptimizer.service.StandardObjective;
+import com.powerinnovations.batteryoptimizer.service.StoppingRule;
+import java.io.File;
+import java.io.IOException;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * A headless launch point for running the optimizer in batch, for example on a compute server with
+ * no display. It loads a CSV file, optimizes it until optimization completes, the time budget
+ * runs out, a target spread is reached or progress stalls, and writes the results to an XLSX,
+ * XLS, CSV or JSON file chosen by the extension of --out. Progress is reported on standard output.
+ *
+ * Usage: BatchRunner (csvFile cellsPerPack | --resume FILE) [--add FILE]... [--no-optimize]
+ * [--mode MODE] [--objective OBJECTIVE] [--moves MOVE,...] [--time SECONDS] [--target-high PERCENT] [--target-average PERCENT]
+ * [--plateau SECONDS] [--threads N] [--shard PACKS] [--seed N] [--checkpoint FILE]
+ * [--checkpoint-interval SECONDS] [--out FILE]
+ *
+ * With --checkpoint the best arrangement is saved periodically while optimizing, so a run that is
+ * stopped or crashes can be continued with --resume. A resumed run keeps the mode of the
+ * checkpoint unless --mode is given.
+ *
+ * Every run is seeded, and the seed is printed and recorded in the results file. A run given the
+ * same --seed, input, --threads and options, and left to stop because it is optimized rather
+ * than on a time limit or target, writes exactly the same arrangement.
+ *
+ * Each --add file holds newly measured cells, which are placed into the loaded arrangement without
+ * optimizing it again (see PackUtils.insertCells). Cells that fit no pack yet are kept in the
+ * checkpoint and reconsidered with the next batch. With --no-optimize only that placement is done,
+ * and the checkpoint, if any, is written straight away.
+ *
+ * @author robbi.mount
+ */
+public final class BatchRunner implements OptimizerView {
+
+    private static final long REPORT_INTERVAL = 1000; //Minimum milliseconds between progress lines.
+
+    private final DecimalFormat df;
+    private long lastReport;
+
+    /**
+     * Default main method. Parses the arguments and runs a single batch.
+     *
+     * @param args the command line arguments.
+     */
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        Thread.setDefaultUncaughtExceptionHandler(new ExceptionHandler());
+        try {
+            System.exit(new BatchRunner().run(args));
+        } catch (IOException | IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            ExceptionHandler.logEvent(Level.SEVERE, ex.getMessage(), ex);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Creates a new BatchRunner object
+     */
+    public BatchRunner() {
+        df = new DecimalFormat("#0.00");
+    }
+
+    /**
+     * Runs a batch described by command line arguments.
+     *
+     * @param args the command line arguments.
+     * @return the process exit code.
+     * @throws IOException thrown in the event of an IO error reading or writing a file.
+     * @throws IllegalArgumentException thrown if the arguments or the CSV data are invalid.
+     */
+    public int run(String[] args) throws IOException, IllegalArgumentException {
+        List<String> positional = new ArrayList<>();
+        OptimizationMode mode = null;
+        StandardObjective objective = null;
+        Set<Move> moves = EnumSet.allOf(Move.class);
+        StoppingRule rule = new StoppingRule();
+        int threads = Runtime.getRuntime().availableProcessors();
+        int shardSize = 0;
+        Long seed = null;
+        File checkpoint = null;
+        long checkpointInterval = 0;
+        File resume = null;
+        File out = null;
+        List<File> additions = new ArrayList<>();
+        boolean optimize = true;
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--")) {
+                positional.add(args[i]);
+                continue;
+            }
+            if (args[i].equals("--no-optimize")) {
+                optimize = false;
+                continue;
+            }
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + args[i]);
+            }
+            switch (args[i]) {
+                case "--mode":
+                    mode = OptimizationMode.valueOf(args[++i].toUpperCase());
+                    break;
+                case "--objective":
+                    objective = StandardObjective.valueOf(args[++i].toUpperCase());
+                    break;
+                case "--moves":
+                    moves = EnumSet.noneOf(Move.class);
+                    for (String move : args[++i].split(",")) {
+                        moves.add(Move.valueOf(move.trim().toUpperCase()));
+                    }
+                    break;
+                case "--time":
+                    rule.setTimeBudget(TimeUnit.SECONDS.toMillis(parseInt(args[++i], "time")));
+                    break;
+                case "--target-high":
+                    rule.setTargetHighSpread(parseDouble(args[++i], "target-high") / 100d);
+                    break;
+                case "--target-average":
+                    rule.setTargetAverageSpread(parseDouble(args[++i], "target-average") / 100d);
+                    break;
+                case "--plateau":
+                    rule.setPlateauWindow(TimeUnit.SECONDS.toMillis(parseInt(args[++i], "plateau")));
+                    break;
+                case "--threads":
+                    threads = parseInt(args[++i], "threads");
+                    break;
+                case "--shard":
+                    shardSize = parseInt(args[++i], "shard");
+                    break;
+                case "--seed":
+                    seed = parseLong(args[++i], "seed");
+                    break;
+                case "--checkpoint":
+                    checkpoint = new File(args[++i]);
+                    break;
+                case "--checkpoint-interval":
+                    checkpointInterval = TimeUnit.SECONDS.toMillis(parseInt(args[++i], "checkpoint-interval"));
+                    break;
+                case "--resume":
+                    resume = new File(args[++i]);
+                    break;
+                case "--out":
+                    out = new File(args[++i]);
+                    break;
+                case "--add":
+                    additions.add(new File(args[++i]));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        if (positional.size() != (resume == null ? 2 : 0)) {
+            System.err.println("Usage: BatchRunner (csvFile cellsPerPack | --resume FILE) [--add FILE]... "
+                    + "[--no-optimize] [--mode MODE] [--objective OBJECTIVE] [--moves MOVE,...] [--time SECONDS] [--target-high PERCENT] [--target-average PERCENT] "
+                    + "[--plateau SECONDS] "
+                    + "[--threads N] [--shard PACKS] [--seed N] [--checkpoint FILE] [--checkpoint-interval SECONDS] "
+                    + "[--out FILE]");
+            System.err.println("Modes: TRULY_RANDOM, HIGH_CENTERED, SIMULATED_ANNEALING");
+            System.err.println("Objectives: MAX_SPREAD, MEAN_SPREAD, MAX_STD_DEV, MEAN_STD_DEV, VARIANCE, "
+                    + "SUM_OF_SQUARES");
+            System.err.println("Moves: SWAP, THREE_CYCLE, BEST_OF_K, REPARTITION, GUIDED_SWAP (default all)");
+            return 2;
+        }
+
+        PackUtils packUtils = new PackUtils(this);
+        packUtils.setThreadCount(threads);
+        packUtils.setShardSize(shardSize);
+        packUtils.setObjective(objective);
+        packUtils.setMoves(moves);
+        packUtils.setSeed(seed);
+        packUtils.setPublishRate(1000d / REPORT_INTERVAL);
+        packUtils.setCheckpointFile(checkpoint);
+        if (checkpointInterval > 0) {
+            packUtils.setCheckpointInterval(checkpointInterval);
+        }
+        File source;
+        if (resume != null) {
+            source = resume;
+            Checkpoint saved = packUtils.loadCheckpoint(resume);
+            if (mode == null) {
+                mode = saved.getMode();
+            }
+            System.out.println("Resuming from " + saved.getIterations() + " iterations");
+        } else {
+            source = new File(positional.get(0));
+            int cellsPerPack = parseInt(positional.get(1), "cellsPerPack");
+            if (cellsPerPack < 2) {
+                throw new IllegalArgumentException("Enter only integers greater than 1 for the size.");
+            }
+            packUtils.loadPackListFromCsv(source, cellsPerPack, (done, total) -> {
+                System.out.println("Loading " + df.format(100d * done / total) + "%");
+            });
+        }
+        if (mode == null) {
+            mode = OptimizationMode.HIGH_CENTERED;
+        }
+        for (File addition : additions) {
+            int built = packUtils.insertCellsFromCsv(addition, packUtils.getPackList().get(0).getCellCount(), null);
+            System.out.println("Inserted " + addition.getName() + ": " + built + " new packs, "
+                    + packUtils.getUnassignedCells().size() + " cells unassigned");
+        }
+        if (out == null) {
+            out = new File(source.getAbsoluteFile().getParentFile(), baseName(source) + "-optimized.xlsx");
+        }
+        if (optimize) {
+            optimize(packUtils, mode, rule, threads);
+        } else {
+            if (checkpoint != null) {
+                packUtils.saveCheckpoint(mode);
+            }
+            report(packUtils.getPackList());
+        }
+
+        packUtils.export(out, ExportFormat.fromFile(out), (done, total) -> {
+            long now = System.currentTimeMillis();
+            if (now - lastReport >= REPORT_INTERVAL) {
+                lastReport = now;
+                System.out.println("Exporting " + df.format(100d * done / total) + "%");
+            }
+        });
+        System.out.println("Results written to " + out.getPath());
+        return 0;
+    }
+
+    /**
+     * Optimizes the loaded lot until the stopping rule triggers and reports the result.
+     */
+    private void optimize(PackUtils packUtils, OptimizationMode mode, StoppingRule rule, int threads) {
+        System.out.println("Optimizing " + packUtils.getPackList().size() + " packs in " + mode
+                + " mode on " + threads + " threads");
+
+        try {
+            OptimizationResult result = packUtils.optimizeUntil(mode, rule);
+            System.out.println("Stopped: " + result.getReason());
+            report(result.getPacks());
+            System.out.println("Finished in " + result.getElapsed() / 1000d + " s after "
+                    + result.getIterations() + " iterations");
+            System.out.println(result.getSeed() != null ? "Seed " + result.getSeed() : "Resumed from checkpoint; no seed");
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            report(packUtils.getPackList());
+        }
+    }
+
+    /**
+     * Prints the pack statistics, at most once per REPORT_INTERVAL.
+     *
+     * @param packList the list of packs to display.
+     */
+    @Override
+    public void updateDisplay(List<Pack> packList) {
+        long now = System.currentTimeMillis();
+        if (now - lastReport >= REPORT_INTERVAL) {
+            lastReport = now;
+            report(packList);
+        }
+    }
+
+    /**
+     * Reports that optimization has completed.
+     *
+     * @param packList the final list of packs.
+     */
+    @Override
+    public void optimizationComplete(List<Pack> packList) {
+        System.out.println("Optimization Complete");
+    }
+
+    private void report(List<Pack> packList) {
+        System.out.println("Average " + df.format(PackUtils.calculateAverageImp(packList) * 100d) + "%"
+                + "  Highest " + df.format(PackUtils.calculateHigh(packList) * 100d) + "%"
+                + "  Lowest " + df.format(PackUtils.calculateLow(packList) * 100d) + "%");
+    }
+
+    private static int parseInt(String value, String name) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("The " + name + " must be an integer: " + value, ex);
+        }
+    }
+
+    private static long parseLong(String value, String name) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("The " + name + " must be an integer: " + value, ex);
+        }
+    }
+
+    private static double parseDouble(String value, String name) {
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("The " + name + " must be a number: " + value, ex);
+        }
+    }
+
+    private static String baseName(File file) {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+}
@@ -1,20 +1,27 @@
 package com.powerinnovations.batteryoptimizer.view;
 
 import com.powerinnovations.batteryoptimizer.service.ExceptionHandler;
+import com.powerinnovations.batteryoptimizer.service.ExportFormat;
 import com.powerinnovations.batteryoptimizer.model.Pack;
 import com.powerinnovations.batteryoptimizer.service.PackUtils;
+import java.awt.BorderLayout;
 import java.awt.Image;
 import java.awt.Toolkit;
+import java.io.File;
 import java.io.IOException;
 import java.net.URL;
+import java.nio.file.Files;
 import java.text.DecimalFormat;
 import java.util.List;
+import java.util.Locale;
 import java.util.logging.Level;
 import javax.swing.JFileChooser;
-import javax.swing.JLabel;
 import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
 import javax.swing.UIManager;
 import javax.swing.UnsupportedLookAndFeelException;
+import javax.swing.filechooser.FileNameExtensionFilter;
 
 /**
  * The launch point of this program. Contains the display logic as well as the main method.
@@ -26,6 +33,9 @@ public final class GUI extends javax.swing.JFrame implements OptimizerView {
 
     private final DecimalFormat df;
     private final PackUtils packUtils;
+    private final SpreadHeatMap heatMap = new SpreadHeatMap();
+    private boolean stopping; //True from the stop button until the optimizer thread has ended.
+    private static final File CHECKPOINT_FILE = new File(System.getProperty("user.home"), ".batteryoptimizer.bopt"); //Saved while optimizing so that an interrupted run can be resumed.
 
     /**
      * Default main method. Sets the look and feel and launches the main JFrame object.
@@ -49,7 +59,9 @@ public final class GUI extends javax.swing.JFrame implements OptimizerView {
         initComponents();
         decorate();
         df = new DecimalFormat("#0.00");
-        packUtils = new PackUtils(this);
+        packUtils = new PackUtils(new SwingViewAdapter(this));
+        packUtils.setThreadCount(Runtime.getRuntime().availableProcessors());
+        packUtils.setCheckpointFile(CHECKPOINT_FILE);
     }
 
     /**
@@ -62,40 +74,62 @@ public final class GUI extends javax.swing.JFrame implements OptimizerView {
         this.setIconImage(img);
         method.setToolTipText("If selected, the decrease method will select random packs.  "
                 + "If not selected, the method will always attempt to decrease the max cell.");
+        grid.setLayout(new BorderLayout());
+        grid.add(heatMap, BorderLayout.CENTER);
     }
 
     /**
-     * Updates the display labels. If the optimize process is running the main grid update is
-     * bypassed in order to save processor time.
+     * Updates the display labels and the spread heat map. The heat map repaints in constant time
+     * however many packs the lot holds, so it is kept current while optimizing as well.
      *
      * @param packList the list of packs to display.
      */
     @Override
     public void updateDisplay(List<Pack> packList) {
-        grid.removeAll();
-        if (!packUtils.isOptimizing()) {
-            packList.stream().forEach((pack) -> {
-                grid.add(new JLabel(df.format(pack.calculateSpreadImp() * 100d) + "%"));
-            });
+        heatMap.setPacks(packList);
+        if (!packUtils.isOptimizing() && !stopping) {
             setInterfaceEnabled(true);
         }
-        averageSpreadLabel.setText(df.format(PackUtils.calculateAverageImp(packList) * 100d) + "%");
-        numOfPacksLabel.setText(String.valueOf(packList.size()));
-        highestSpreadLabel.setText(df.format(PackUtils.calculateHigh(packList) * 100d) + "%");
-        lowestSpreadLabel.setText(df.format(PackUtils.calculateLow(packList) * 100d) + "%");
-        grid.updateUI();
+        averageSpreadLabel.setText(df.format(heatMap.getAverage() * 100d) + "%");
+        numOfPacksLabel.setText(String.valueOf(heatMap.getPackCount()));
+        highestSpreadLabel.setText(df.format(heatMap.getHigh() * 100d) + "%");
+        lowestSpreadLabel.setText(df.format(heatMap.getLow() * 100d) + "%");
+    }
+
+    /**
+     * Re-enables the controls and notifies the user that optimization has completed. A completed
+     * run has nothing left to resume, so its checkpoint is discarded.
+     *
+     * @param packList the final list of packs.
+     */
+    @Override
+    public void optimizationComplete(List<Pack> packList) {
+        setInterfaceEnabled(true);
+        discardCheckpoint();
+        JOptionPane.showMessageDialog(this, "Optimization Complete");
+    }
+
+    /**
+     * Deletes the checkpoint so that the next Open does not offer to resume a finished or
+     * abandoned run.
+     */
+    private void discardCheckpoint() {
+        try {
+            Files.deleteIfExists(CHECKPOINT_FILE.toPath());
+        } catch (IOException ex) {
+            ExceptionHandler.logEvent(Level.WARNING, ex.getMessage(), ex);
+        }
     }
 
     /**
-     * Changes the button enabled state.
+     * Changes the button enabled state. Export and results stay available while optimizing, and
+     * show the best arrangement found so far.
      *
      * @param state the desired state.
      */
     private void setInterfaceEnabled(boolean state) {
         start.setEnabled(state);
         stop.setEnabled(!state);
-        export.setEnabled(state);
-        results.setEnabled(state);
         method.setEnabled(state);
         working.setIndeterminate(!state);
     }
@@ -343,13 +377,29 @@ public final class GUI extends javax.swing.JFrame implements OptimizerView {
 
     /**
      * Stops the optimization process for the user to review the results and sets the UI
-     * accessibility appropriately.
+     * accessibility appropriately. The optimizer thread is joined on a background thread, as it
+     * may still be writing its final checkpoint or finishing a shard; the controls are re-enabled
+     * once it has stopped.
      *
      * @param evt
      */
     private void stopActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_stopActionPerformed
-        packUtils.pauseOptimize();
-        setInterfaceEnabled(true);
+        packUtils.requestStop();
+        stopping = true;
+        stop.setEnabled(false);
+        new SwingWorker<Void, Void>() {
+            @Override
+            protected Void doInBackground() {
+                packUtils.pauseOptimize();
+                return null;
+            }
+
+            @Override
+            protected void done() {
+                stopping = false;
+                setInterfaceEnabled(true);
+            }
+        }.execute();
     }//GEN-LAST:event_stopActionPerformed
 
     /**
@@ -362,27 +412,80 @@ public final class GUI extends javax.swing.JFrame implements OptimizerView {
     }//GEN-LAST:event_resultsActionPerformed
 
     /**
-     * Exports the detailed pack configuration results to an Excel file.
+     * Exports the detailed pack configuration results to a file chosen by the user, as XLSX, XLS,
+     * CSV or JSON. The export runs in the background and its progress is shown on the progress bar
+     * unless an optimization is running.
      *
      * @param evt
      */
     private void exportActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_exportActionPerformed
-        try {
-            packUtils.exportPackDetailsToExcel();
-        } catch (IOException ex) {
-            JOptionPane.showMessageDialog(this, ex.getMessage());
-            ExceptionHandler.logEvent(Level.SEVERE, ex.getMessage(), ex);
+        JFileChooser fc = new JFileChooser();
+        fc.setAcceptAllFileFilterUsed(false);
+        for (ExportFormat format : ExportFormat.values()) {
+            fc.addChoosableFileFilter(new FileNameExtensionFilter(format + " (*." + format.getExtension() + ")",
+                    format.getExtension()));
+        }
+        fc.setSelectedFile(new File("pack-results." + ExportFormat.XLSX.getExtension()));
+        if (fc.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
         }
+        File file = fc.getSelectedFile();
+        String extension = ((FileNameExtensionFilter) fc.getFileFilter()).getExtensions()[0];
+        if (!file.getName().toLowerCase(Locale.ROOT).endsWith("." + extension)) {
+            file = new File(file.getPath() + "." + extension);
+        }
+        export.setEnabled(false);
+        packUtils.exportInBackground(file, ExportFormat.fromFile(file), (done, total) -> {
+            SwingUtilities.invokeLater(() -> {
+                if (!packUtils.isOptimizing()) {
+                    working.setIndeterminate(false);
+                    working.setMaximum((int) total);
+                    working.setValue((int) done);
+                }
+            });
+        }).whenComplete((written, ex) -> {
+            SwingUtilities.invokeLater(() -> {
+                export.setEnabled(true);
+                working.setValue(0);
+                if (ex != null) {
+                    Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                    JOptionPane.showMessageDialog(this, cause.getMessage());
+                    ExceptionHandler.logEvent(Level.SEVERE, cause.getMessage(), cause);
+                } else {
+                    JOptionPane.showMessageDialog(this, "Results written to " + written.getPath());
+                }
+            });
+        });
     }//GEN-LAST:event_exportActionPerformed
 
     /**
      * Launches a file chooser window to select the CSV file containing the original battery data.
      * Then initial sorting and assembly of the Pack and Cell collections takes place. The main GUI
-     * object is then updated.
+     * object is then updated. If a checkpoint from an earlier run exists, the user is first offered
+     * to resume it instead; declining discards it.
      *
      * @param evt
      */
     private void openActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_openActionPerformed
+        if (CHECKPOINT_FILE.exists()) {
+            int choice = JOptionPane.showConfirmDialog(this, "Resume the previous optimization run?",
+                    "Resume", JOptionPane.YES_NO_OPTION);
+            if (choice == JOptionPane.YES_OPTION) {
+                try {
+                    packUtils.loadCheckpoint(CHECKPOINT_FILE);
+                    start.setEnabled(true);
+                    export.setEnabled(true);
+                    results.setEnabled(true);
+                    open.setEnabled(false);
+                    return;
+                } catch (IOException ex) {
+                    JOptionPane.showMessageDialog(this, ex.getMessage());
+                    ExceptionHandler.logEvent(Level.SEVERE, ex.getMessage(), ex);
+                }
+            } else if (choice == JOptionPane.NO_OPTION) {
+                discardCheckpoint();
+            }
+        }
         try {
             int numCellsPerPack = 0;
             String response = JOptionPane.showInputDialog(this,
@@ -5,8 +5,27 @@ import java.util.List;
 
 /**
  * An interface for creating UI objects to interface with the PackUtils class and receive updates.
+ * PackUtils performs no user interface work of its own; every side effect visible to the user goes
+ * through this interface, so an implementation may be a window or a headless console.
+ *
  * @author robbi.mount
  */
 public interface OptimizerView {
+
+    /**
+     * Called whenever the Pack collection changes, at most publishRate times a second while
+     * optimizing. It may be called from any thread; a Swing view should be wrapped in a
+     * SwingViewAdapter.
+     *
+     * @param packList an immutable snapshot of the packs to display.
+     */
     public void updateDisplay(List<Pack> packList);
+
+    /**
+     * Called from the optimizer thread once optimization has completed on its own, after the final
+     * arrangement has been sorted and displayed. It is not called when the optimizer is paused.
+     *
+     * @param packList the final list of packs.
+     */
+    public void optimizationComplete(List<Pack> packList);
 }
@@ -1,20 +1,81 @@
 package com.powerinnovations.batteryoptimizer.view;
 
+import com.powerinnovations.batteryoptimizer.model.Cell;
 import com.powerinnovations.batteryoptimizer.model.ResultModel;
 import com.powerinnovations.batteryoptimizer.model.Pack;
+import java.awt.BorderLayout;
 import java.awt.Image;
 import java.awt.Toolkit;
 import java.net.URL;
+import java.text.DecimalFormat;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Locale;
+import javax.swing.BorderFactory;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JTextField;
+import javax.swing.RowFilter;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.table.DefaultTableCellRenderer;
+import javax.swing.table.TableRowSorter;
 
 /**
- * The Results JFrame object displays detailed results of the pack sorting.
+ * The Results JFrame object displays detailed results of the pack sorting. Every column sorts by
+ * clicking its header, and the rows can be filtered by pack ID, by cell address, or by spread.
  *
  * @author robbi.mount
  * @version 1.0 June 2016
  */
 public class Results extends javax.swing.JFrame {
 
+    /**
+     * Orders pack IDs made only of digits numerically, ahead of all other IDs, which are ordered
+     * alphabetically. Numbers of any length are compared without parsing them.
+     */
+    static final Comparator<String> ID_ORDER = (a, b) -> {
+        boolean numericA = isNumeric(a);
+        boolean numericB = isNumeric(b);
+        if (numericA != numericB) {
+            return numericA ? -1 : 1;
+        }
+        if (numericA) {
+            String digitsA = stripLeadingZeros(a);
+            String digitsB = stripLeadingZeros(b);
+            int order = digitsA.length() != digitsB.length()
+                    ? Integer.compare(digitsA.length(), digitsB.length()) : digitsA.compareTo(digitsB);
+            if (order != 0) {
+                return order;
+            }
+        }
+        return a.compareTo(b);
+    };
+
+    private static boolean isNumeric(String id) {
+        if (id.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < id.length(); i++) {
+            if (id.charAt(i) < '0' || id.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String stripLeadingZeros(String digits) {
+        int start = 0;
+        while (start < digits.length() - 1 && digits.charAt(start) == '0') {
+            start++;
+        }
+        return digits.substring(start);
+    }
+
+    private final ResultModel model;
+    private final TableRowSorter<ResultModel> sorter;
+    private final JTextField filter = new JTextField(20);
+
     /**
      * Creates new form Results and populates the table.
      *
@@ -22,7 +83,9 @@ public class Results extends javax.swing.JFrame {
      */
     public Results(List<Pack> packs) {
         initComponents();
-        resultsTable.setModel(new ResultModel(packs));
+        model = new ResultModel(packs);
+        sorter = new TableRowSorter<>(model);
+        resultsTable.setModel(model);
         decorate();
     }
 
@@ -31,6 +94,107 @@ public class Results extends javax.swing.JFrame {
         URL url = ClassLoader.getSystemResource("logo.png");
         Image img = Toolkit.getDefaultToolkit().createImage(url);
         this.setIconImage(img);
+
+        ValueRenderer renderer = new ValueRenderer();
+        resultsTable.setDefaultRenderer(Cell.class, renderer);
+        resultsTable.setDefaultRenderer(Double.class, renderer);
+        sorter.setComparator(0, ID_ORDER);
+        resultsTable.setRowSorter(sorter);
+
+        //Place a filter bar above the generated layout.
+        filter.setToolTipText("Show packs whose ID or cell address contains the text. "
+                + "Use >1.5 or <1.5 to filter by spread percent.");
+        filter.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                applyFilter();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                applyFilter();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                applyFilter();
+            }
+        });
+        JPanel filterBar = new JPanel(new BorderLayout(5, 0));
+        filterBar.setBorder(BorderFactory.createEmptyBorder(10, 12, 0, 12));
+        filterBar.add(new JLabel("Filter:"), BorderLayout.WEST);
+        filterBar.add(filter, BorderLayout.CENTER);
+        JPanel content = new JPanel(new BorderLayout());
+        content.add(filterBar, BorderLayout.NORTH);
+        content.add(getContentPane(), BorderLayout.CENTER);
+        setContentPane(content);
+        pack();
+    }
+
+    /**
+     * Filters the rows by the text of the filter field. Text starting with &gt; or &lt; followed
+     * by a number keeps the packs whose spread percent is above or below it; any other text keeps
+     * the packs whose ID or cell addresses contain it, ignoring case.
+     */
+    private void applyFilter() {
+        String text = filter.getText().trim();
+        if (text.isEmpty()) {
+            sorter.setRowFilter(null);
+            return;
+        }
+        if (text.startsWith(">") || text.startsWith("<")) {
+            try {
+                double limit = Double.parseDouble(text.substring(1).trim()) / 100d;
+                boolean above = text.startsWith(">");
+                sorter.setRowFilter(new RowFilter<ResultModel, Integer>() {
+                    @Override
+                    public boolean include(RowFilter.Entry<? extends ResultModel, ? extends Integer> entry) {
+                        double spread = model.getSpread(entry.getIdentifier());
+                        return above ? spread > limit : spread < limit;
+                    }
+                });
+            } catch (NumberFormatException ex) {
+                //Incomplete input such as ">" alone; keep the current filter until it parses.
+            }
+            return;
+        }
+        String needle = text.toLowerCase(Locale.ROOT);
+        sorter.setRowFilter(new RowFilter<ResultModel, Integer>() {
+            @Override
+            public boolean include(RowFilter.Entry<? extends ResultModel, ? extends Integer> entry) {
+                int row = entry.getIdentifier();
+                if (model.getID(row).toLowerCase(Locale.ROOT).contains(needle)) {
+                    return true;
+                }
+                for (int c = 0; c < model.getCellsPerPack(); c++) {
+                    if (model.getCell(row, c).getAddress().toLowerCase(Locale.ROOT).contains(needle)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+        });
+    }
+
+    /**
+     * Formats spreads as percentages and cells as their address and impedance in milliohms. Only
+     * the rows on screen are ever rendered.
+     */
+    private static final class ValueRenderer extends DefaultTableCellRenderer {
+
+        private final DecimalFormat df = new DecimalFormat("#0.00");
+
+        @Override
+        protected void setValue(Object value) {
+            if (value instanceof Cell) {
+                Cell c = (Cell) value;
+                setText(c.getAddress() + " (" + df.format(c.getImpedance() * 1000) + " mΩ)");
+            } else if (value instanceof Double) {
+                setText(df.format((Double) value * 100) + "%");
+            } else {
+                super.setValue(value);
+            }
+        }
     }
 
     /**
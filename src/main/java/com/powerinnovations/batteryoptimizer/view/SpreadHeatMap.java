@@ -0,0 +1,228 @@
+package com.powerinnovations.batteryoptimizer.view;
+
+import com.powerinnovations.batteryoptimizer.model.Pack;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Insets;
+import java.awt.RenderingHints;
+import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.text.DecimalFormat;
+import java.util.List;
+import javax.swing.JComponent;
+import javax.swing.ToolTipManager;
+import javax.swing.UIManager;
+
+/**
+ * Paints the impedance spread of every pack in a lot as one coloured tile, from green for the
+ * lowest spread in the lot to red for the highest. The tiles are drawn into an image with one
+ * pixel per pack, which is then scaled to fill the component, so a repaint costs the same for a
+ * lot of ten packs as for one of tens of thousands. When the tiles are large enough the spread is
+ * also written on each. Hovering over a tile shows its pack ID and spread.
+ *
+ * @author robbi.mount
+ */
+public class SpreadHeatMap extends JComponent {
+
+    private static final int SHADES = 256;
+    private static final int[] PALETTE = new int[SHADES];
+
+    static {
+        for (int i = 0; i < SHADES; i++) {
+            PALETTE[i] = Color.HSBtoRGB((1f - i / (float) (SHADES - 1)) / 3f, 0.75f, 0.9f);
+        }
+    }
+
+    private final DecimalFormat df = new DecimalFormat("#0.00");
+    private String[] ids = new String[0];
+    private double[] spreads = new double[0];
+    private double low;
+    private double high;
+    private double average;
+    private BufferedImage image; //One pixel per pack; rebuilt when the packs or the columns change.
+    private int columns;
+    private int rows;
+
+    /**
+     * Constructs an empty heat map.
+     */
+    public SpreadHeatMap() {
+        setOpaque(true);
+        setFont(UIManager.getFont("Label.font"));
+        setBackground(UIManager.getColor("Panel.background"));
+        setPreferredSize(new Dimension(600, 500));
+        ToolTipManager.sharedInstance().registerComponent(this);
+    }
+
+    /**
+     * Replaces the packs shown. The spreads are copied, so the list is not held.
+     *
+     * @param packList the list of packs to display.
+     */
+    public void setPacks(List<Pack> packList) {
+        int n = packList.size();
+        String[] newIds = new String[n];
+        double[] newSpreads = new double[n];
+        double newLow = Double.MAX_VALUE;
+        double newHigh = 0;
+        double sum = 0;
+        for (int i = 0; i < n; i++) {
+            Pack pack = packList.get(i);
+            double spread = pack.calculateSpreadImp();
+            newIds[i] = pack.getID();
+            newSpreads[i] = spread;
+            newLow = Math.min(newLow, spread);
+            newHigh = Math.max(newHigh, spread);
+            sum += spread;
+        }
+        ids = newIds;
+        spreads = newSpreads;
+        low = n == 0 ? 0 : newLow;
+        high = newHigh;
+        average = n == 0 ? 0 : sum / n;
+        image = null;
+        repaint();
+    }
+
+    /**
+     * Returns the number of packs shown.
+     *
+     * @return the pack count.
+     */
+    public int getPackCount() {
+        return spreads.length;
+    }
+
+    /**
+     * Returns the lowest spread of the packs shown.
+     *
+     * @return the low
+     */
+    public double getLow() {
+        return low;
+    }
+
+    /**
+     * Returns the highest spread of the packs shown.
+     *
+     * @return the high
+     */
+    public double getHigh() {
+        return high;
+    }
+
+    /**
+     * Returns the average spread of the packs shown.
+     *
+     * @return the average
+     */
+    public double getAverage() {
+        return average;
+    }
+
+    /**
+     * Returns the pack ID and spread of the tile under the mouse.
+     *
+     * @param event the mouse event.
+     * @return the tooltip, or null outside the tiles.
+     */
+    @Override
+    public String getToolTipText(MouseEvent event) {
+        int index = indexAt(event.getX(), event.getY());
+        return index < 0 ? null : "Pack " + ids[index] + ": " + df.format(spreads[index] * 100d) + "%";
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        Insets insets = getInsets();
+        int width = getWidth() - insets.left - insets.right;
+        int height = getHeight() - insets.top - insets.bottom;
+        g.setColor(getBackground());
+        g.fillRect(insets.left, insets.top, width, height);
+        if (spreads.length == 0 || width <= 0 || height <= 0) {
+            return;
+        }
+        int wanted = columnsFor(width, height);
+        if (image == null || wanted != columns) {
+            buildImage(wanted);
+        }
+        Graphics2D g2 = (Graphics2D) g.create();
+        try {
+            g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+            g2.drawImage(image, insets.left, insets.top, width, height, null);
+            paintLabels(g2, insets, width, height);
+        } finally {
+            g2.dispose();
+        }
+    }
+
+    /**
+     * Writes the spread on each tile, if the tiles are large enough to hold it.
+     */
+    private void paintLabels(Graphics2D g2, Insets insets, int width, int height) {
+        FontMetrics fm = g2.getFontMetrics(getFont());
+        double tileWidth = width / (double) columns;
+        double tileHeight = height / (double) rows;
+        if (tileWidth < fm.stringWidth("00.00%") + 4 || tileHeight < fm.getHeight()) {
+            return;
+        }
+        g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g2.setFont(getFont());
+        g2.setColor(Color.BLACK);
+        for (int i = 0; i < spreads.length; i++) {
+            String text = df.format(spreads[i] * 100d) + "%";
+            int x = insets.left + (int) ((i % columns) * tileWidth + (tileWidth - fm.stringWidth(text)) / 2);
+            int y = insets.top + (int) ((i / columns) * tileHeight + (tileHeight - fm.getHeight()) / 2) + fm.getAscent();
+            g2.drawString(text, x, y);
+        }
+    }
+
+    /**
+     * Chooses the number of columns that makes the tiles closest to square.
+     */
+    private int columnsFor(int width, int height) {
+        int n = spreads.length;
+        int cols = (int) Math.ceil(Math.sqrt(n * (double) width / height));
+        return Math.max(1, Math.min(n, cols));
+    }
+
+    /**
+     * Colours one pixel per pack.
+     */
+    private void buildImage(int cols) {
+        int n = spreads.length;
+        columns = cols;
+        rows = (n + cols - 1) / cols;
+        image = new BufferedImage(columns, rows, BufferedImage.TYPE_INT_RGB);
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        double range = high - low;
+        for (int i = 0; i < n; i++) {
+            int shade = range > 0 ? (int) ((spreads[i] - low) / range * (SHADES - 1)) : 0;
+            pixels[i] = PALETTE[shade];
+        }
+        int background = getBackground().getRGB();
+        for (int i = n; i < pixels.length; i++) {
+            pixels[i] = background;
+        }
+    }
+
+    /**
+     * Returns the index of the pack under a point, or -1.
+     */
+    private int indexAt(int x, int y) {
+        Insets insets = getInsets();
+        int width = getWidth() - insets.left - insets.right;
+        int height = getHeight() - insets.top - insets.bottom;
+        if (image == null || width <= 0 || height <= 0 || x < insets.left || y < insets.top) {
+            return -1;
+        }
+        int col = (int) ((x - insets.left) / (width / (double) columns));
+        int row = (int) ((y - insets.top) / (height / (double) rows));
+        int index = row * columns + col;
+        return col < columns && row < rows && index < spreads.length ? index : -1;
+    }
+}
@@ -0,0 +1,62 @@
+package com.powerinnovations.batteryoptimizer.view;
+
+import com.powerinnovations.batteryoptimizer.model.Pack;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.swing.SwingUtilities;
+
+/**
+ * Hands PackUtils updates to a Swing view on the event dispatch thread. Updates are coalesced:
+ * while one is waiting to be displayed, a newer one simply replaces it, so however fast the
+ * optimizer publishes, at most one display update is ever queued and the optimizer thread never
+ * waits on rendering.
+ *
+ * @author robbi.mount
+ */
+public final class SwingViewAdapter implements OptimizerView {
+
+    private final OptimizerView view;
+    private final AtomicReference<List<Pack>> pending;
+
+    /**
+     * Constructs an adapter for a Swing view.
+     *
+     * @param view the view, whose methods are only ever called on the event dispatch thread.
+     */
+    public SwingViewAdapter(OptimizerView view) {
+        this.view = view;
+        this.pending = new AtomicReference<>();
+    }
+
+    /**
+     * Queues the pack list for display, replacing any update not yet displayed.
+     *
+     * @param packList an immutable snapshot of the packs to display.
+     */
+    @Override
+    public void updateDisplay(List<Pack> packList) {
+        if (pending.getAndSet(packList) == null) {
+            SwingUtilities.invokeLater(this::flush);
+        }
+    }
+
+    /**
+     * Displays any pending update and then notifies the view.
+     *
+     * @param packList the final list of packs.
+     */
+    @Override
+    public void optimizationComplete(List<Pack> packList) {
+        SwingUtilities.invokeLater(() -> {
+            flush();
+            view.optimizationComplete(packList);
+        });
+    }
+
+    private void flush() {
+        List<Pack> packList = pending.getAndSet(null);
+        if (packList != null) {
+            view.updateDisplay(packList);
+        }
+    }
+}
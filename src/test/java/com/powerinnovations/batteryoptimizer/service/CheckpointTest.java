@@ -0,0 +1,90 @@
+package com.powerinnovations.batteryoptimizer.service;
+
+import com.powerinnovations.batteryoptimizer.model.Cell;
+import com.powerinnovations.batteryoptimizer.model.Pack;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for Checkpoint.
+ *
+ * @author robbi.mount
+ */
+public class CheckpointTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void roundTripsEveryField() throws IOException {
+        SeededRandom random = new SeededRandom(1234L);
+        Checkpoint checkpoint = new Checkpoint(OptimizationMode.SIMULATED_ANNEALING, packs(),
+                Arrays.asList(new Cell("U1", 0.0123)), 0.25, 98765L, random);
+        File file = new File(folder.getRoot(), "run.bopt");
+        checkpoint.write(file);
+
+        Checkpoint read = Checkpoint.read(file);
+        assertEquals(OptimizationMode.SIMULATED_ANNEALING, read.getMode());
+        assertEquals(0.25, read.getBestObjective(), 0);
+        assertEquals(98765L, read.getIterations());
+        assertEquals(random.nextLong(), read.getRandom().nextLong());
+        assertEquals(describe(checkpoint.getPacks()), describe(read.getPacks()));
+        assertEquals(1, read.getUnassigned().size());
+        assertEquals("U1", read.getUnassigned().get(0).getAddress());
+        assertEquals(0.0123, read.getUnassigned().get(0).getImpedance(), 0);
+    }
+
+    @Test
+    public void rejectsAnyFlippedByteWithAnIOException() throws IOException {
+        File file = new File(folder.getRoot(), "run.bopt");
+        new Checkpoint(OptimizationMode.HIGH_CENTERED, packs(), 0.5, 10L, new SeededRandom(7L)).write(file);
+        byte[] original = Files.readAllBytes(file.toPath());
+        for (int i = 0; i < original.length; i++) {
+            for (int bit : new int[]{0x01, 0x80}) {
+                byte[] damaged = original.clone();
+                damaged[i] ^= bit;
+                Files.write(file.toPath(), damaged);
+                try {
+                    Checkpoint.read(file);
+                    fail("A flipped bit at byte " + i + " was not detected.");
+                } catch (IOException expected) {
+                    //Every kind of damage is reported as an IOException.
+                }
+            }
+        }
+    }
+
+    private static List<Pack> packs() {
+        List<Pack> packs = new ArrayList<>();
+        for (int p = 0; p < 3; p++) {
+            Pack pack = new Pack(Integer.toString(p));
+            for (int c = 0; c < 4; c++) {
+                pack.addCell(new Cell("C" + p + "-" + c, 0.010 + p * 0.001 + c * 0.0001));
+            }
+            packs.add(pack);
+        }
+        return packs;
+    }
+
+    private static List<String> describe(List<Pack> packs) {
+        List<String> description = new ArrayList<>();
+        for (Pack pack : packs) {
+            StringBuilder sb = new StringBuilder(pack.getID());
+            for (Cell c : pack.getCells()) {
+                sb.append(' ').append(c.getAddress()).append('=').append(c.getImpedance());
+            }
+            description.add(sb.toString());
+        }
+        return description;
+    }
+}
@@ -0,0 +1,126 @@
+package com.powerinnovations.batteryoptimizer.service;
+
+import com.powerinnovations.batteryoptimizer.model.CellLot;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for CsvCellReader.
+ *
+ * @author robbi.mount
+ */
+public class CsvCellReaderTest {
+
+    private static final int ROWS = 500_000; //About 10 MB of CSV, several PROGRESS_STEPs.
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void reportsProgressThroughoutAFileSmallerThanAWindow() throws IOException {
+        File csv = folder.newFile("cells.csv");
+        try (BufferedWriter writer = Files.newBufferedWriter(csv.toPath(), StandardCharsets.US_ASCII)) {
+            writer.write("cell_ID,cell_value\r\n");
+            for (int i = 0; i < ROWS; i++) {
+                writer.write("CELL-" + i + "," + (10 + (i % 1000) / 100.0) + "\r\n");
+            }
+        }
+        List<Long> reported = new ArrayList<>();
+        CellLot lot = CsvCellReader.read(csv, (done, total) -> {
+            assertEquals(csv.length(), total);
+            reported.add(done);
+        });
+
+        assertEquals(ROWS, lot.size());
+        assertTrue("Expected several progress updates, got " + reported, reported.size() > 1);
+        for (int i = 1; i < reported.size(); i++) {
+            assertTrue(reported.get(i) > reported.get(i - 1));
+        }
+        assertEquals(csv.length(), (long) reported.get(reported.size() - 1));
+    }
+
+    @Test
+    public void unescapesQuotedIds() throws IOException {
+        CellLot lot = CsvCellReader.read(csv("cell_ID,cell_value\n"
+                + "\"A,1\",0.010\n"
+                + "\"B\"\"2\"\"\",\"0.020\"\n"
+                + "\"C\nline\",0.030\n"), null);
+        assertEquals(3, lot.size());
+        assertEquals("A,1", lot.getAddress(0));
+        assertEquals("B\"2\"", lot.getAddress(1));
+        assertEquals(0.020, lot.getImpedance(1), 0);
+        assertEquals("C\nline", lot.getAddress(2));
+    }
+
+    @Test
+    public void findsReorderedColumnsAfterAByteOrderMark() throws IOException {
+        File file = folder.newFile("bom.csv");
+        byte[] body = ("tester,cell_value,\"cell_ID\"\r\n"
+                + "T1,0.0105,A1\r\n"
+                + "T2,1.5e-2,A2\r\n").getBytes(StandardCharsets.UTF_8);
+        byte[] bytes = new byte[body.length + 3];
+        bytes[0] = (byte) 0xEF;
+        bytes[1] = (byte) 0xBB;
+        bytes[2] = (byte) 0xBF;
+        System.arraycopy(body, 0, bytes, 3, body.length);
+        Files.write(file.toPath(), bytes);
+
+        CellLot lot = CsvCellReader.read(file, null);
+        assertEquals(2, lot.size());
+        assertEquals("A1", lot.getAddress(0));
+        assertEquals(0.0105, lot.getImpedance(0), 0);
+        assertEquals("A2", lot.getAddress(1));
+        assertEquals(0.015, lot.getImpedance(1), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsAHeaderWithoutAValueColumn() throws IOException {
+        CsvCellReader.read(csv("cell_ID,impedance\nA1,0.010\n"), null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsARowWithoutAValue() throws IOException {
+        CsvCellReader.read(csv("cell_ID,cell_value\nA1,0.010\nA2\n"), null);
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void rejectsAValueThatIsNotANumber() throws IOException {
+        CsvCellReader.read(csv("cell_ID,cell_value\nA1,0.010\nA2,low\n"), null);
+    }
+
+    @Test
+    public void readsRowsThatCrossAWindowBoundary() throws IOException {
+        StringBuilder sb = new StringBuilder("cell_ID,cell_value\n");
+        for (int i = 0; i < 200; i++) {
+            sb.append("\"CELL-").append(i).append("\",").append(i / 1000.0).append('\n');
+        }
+        File file = csv(sb.toString());
+        CellLot expected = CsvCellReader.read(file, null);
+        for (long window : Arrays.asList(32L, 37L, 64L, 1000L)) {
+            CellLot lot = CsvCellReader.read(file, null, window);
+            assertEquals(200, lot.size());
+            for (int i = 0; i < lot.size(); i++) {
+                assertEquals("CELL-" + i, lot.getAddress(i));
+                assertEquals(expected.getImpedance(i), lot.getImpedance(i), 0);
+            }
+        }
+    }
+
+    private File csv(String content) throws IOException {
+        File file = folder.newFile();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
@@ -0,0 +1,66 @@
+package com.powerinnovations.batteryoptimizer.service;
+
+import com.powerinnovations.batteryoptimizer.model.Cell;
+import com.powerinnovations.batteryoptimizer.model.Pack;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for LotOptimizer.
+ *
+ * @author robbi.mount
+ */
+public class LotOptimizerTest {
+
+    private static final int STEPS = 20000;
+    private static final int CHECK_EVERY = 500;
+
+    @Test
+    public void incrementalObjectiveMatchesAFullEvaluation() {
+        for (StandardObjective objective : StandardObjective.values()) {
+            for (OptimizationMode mode : OptimizationMode.values()) {
+                LotOptimizer optimizer = new LotOptimizer(lot(), mode, objective, EnumSet.allOf(Move.class),
+                        new AnnealingSchedule(), new SeededRandom(11L));
+                for (int i = 1; i <= STEPS; i++) {
+                    optimizer.step();
+                    if (i % CHECK_EVERY == 0) {
+                        double expected = objective.evaluate(optimizer.toPacks());
+                        assertEquals(objective + " in " + mode + " after " + i + " steps", expected,
+                                optimizer.getBestObjective(), Math.abs(expected) * 1e-9);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void singleSwapsKeepTheObjectiveExact() {
+        for (StandardObjective objective : StandardObjective.values()) {
+            LotOptimizer optimizer = new LotOptimizer(lot(), OptimizationMode.TRULY_RANDOM, objective,
+                    EnumSet.of(Move.SWAP), new AnnealingSchedule(), new SeededRandom(12L));
+            for (int i = 0; i < STEPS; i++) {
+                optimizer.step();
+            }
+            double expected = objective.evaluate(optimizer.toPacks());
+            assertEquals(objective.toString(), expected, optimizer.getObjective(), Math.abs(expected) * 1e-9);
+        }
+    }
+
+    private static List<Pack> lot() {
+        Random random = new Random(8);
+        List<Pack> packs = new ArrayList<>();
+        for (int p = 0; p < 30; p++) {
+            Pack pack = new Pack(Integer.toString(p));
+            for (int c = 0; c < 5; c++) {
+                pack.addCell(new Cell(p + "-" + c, 0.010 + random.nextDouble() * 0.004));
+            }
+            packs.add(pack);
+        }
+        return packs;
+    }
+}
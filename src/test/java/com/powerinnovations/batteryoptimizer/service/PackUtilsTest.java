@@ -0,0 +1,96 @@
+package com.powerinnovations.batteryoptimizer.service;
+
+import com.powerinnovations.batteryoptimizer.model.Cell;
+import com.powerinnovations.batteryoptimizer.model.Pack;
+import com.powerinnovations.batteryoptimizer.view.OptimizerView;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for PackUtils.
+ *
+ * @author robbi.mount
+ */
+public class PackUtilsTest {
+
+    private static final OptimizerView NO_VIEW = new OptimizerView() {
+        @Override
+        public void updateDisplay(List<Pack> packList) {
+        }
+
+        @Override
+        public void optimizationComplete(List<Pack> packList) {
+        }
+    };
+
+    @Test
+    public void partitionSortedLeavesAnEmptyLotAlone() {
+        PackUtils packUtils = new PackUtils(NO_VIEW);
+        assertEquals(0, packUtils.partitionSorted(), 0);
+        assertTrue(packUtils.getPackList().isEmpty());
+    }
+
+    @Test
+    public void sameSeedGivesTheSameArrangementOnOneThread() throws InterruptedException {
+        assertReproducible(1);
+    }
+
+    @Test
+    public void sameSeedGivesTheSameArrangementOnSeveralThreads() throws InterruptedException {
+        assertReproducible(4);
+    }
+
+    private static void assertReproducible(int threadCount) throws InterruptedException {
+        for (OptimizationMode mode : OptimizationMode.values()) {
+            OptimizationResult first = run(mode, threadCount);
+            OptimizationResult second = run(mode, threadCount);
+            assertEquals(StopReason.COMPLETE, first.getReason());
+            assertEquals(Long.valueOf(42L), first.getSeed());
+            assertEquals(mode + " on " + threadCount + " threads", describe(first.getPacks()), describe(second.getPacks()));
+            assertEquals(first.getIterations(), second.getIterations());
+        }
+    }
+
+    private static OptimizationResult run(OptimizationMode mode, int threadCount) throws InterruptedException {
+        PackUtils packUtils = new PackUtils(NO_VIEW);
+        packUtils.insertCells(cells(), 4);
+        packUtils.setThreadCount(threadCount);
+        packUtils.setOptimizedStandard(2000);
+        packUtils.setMoves(EnumSet.allOf(Move.class));
+        packUtils.setSeed(42L);
+        AnnealingSchedule schedule = new AnnealingSchedule();
+        schedule.setCycleLength(20000); //Cool quickly, so that annealing runs finish fast too.
+        schedule.setReheats(1);
+        packUtils.setAnnealingSchedule(schedule);
+        StoppingRule rule = new StoppingRule();
+        rule.setStopWhenOptimized(true);
+        return packUtils.optimizeUntil(mode, rule);
+    }
+
+    private static List<Cell> cells() {
+        Random random = new Random(3);
+        List<Cell> cells = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            cells.add(new Cell("C" + i, 0.010 + random.nextDouble() * 0.005));
+        }
+        return cells;
+    }
+
+    private static List<String> describe(List<Pack> packs) {
+        List<String> description = new ArrayList<>();
+        for (Pack pack : packs) {
+            StringBuilder sb = new StringBuilder(pack.getID());
+            for (Cell c : pack.getCells()) {
+                sb.append(' ').append(c.getAddress());
+            }
+            description.add(sb.toString());
+        }
+        return description;
+    }
+}
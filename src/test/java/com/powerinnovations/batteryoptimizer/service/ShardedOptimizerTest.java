@@ -0,0 +1,88 @@
+package com.powerinnovations.batteryoptimizer.service;
+
+import com.powerinnovations.batteryoptimizer.model.Cell;
+import com.powerinnovations.batteryoptimizer.model.Pack;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for ShardedOptimizer.
+ *
+ * @author robbi.mount
+ */
+public class ShardedOptimizerTest {
+
+    private static final int PACKS = 40;
+    private static final int CELLS_PER_PACK = 4;
+
+    @Test
+    public void rebuildsAnUnoptimizedLotFromItsSortedCells() {
+        List<Pack> lot = randomLot("P");
+        List<Pack> result = newOptimizer().optimize(lot, 200, () -> true);
+        assertEquals(PACKS, result.size());
+        assertEquals(ids(PACKS), idsOf(result));
+        assertTrue(StandardObjective.MAX_SPREAD.evaluate(result) < StandardObjective.MAX_SPREAD.evaluate(lot));
+    }
+
+    @Test
+    public void buildsOnAnOptimizedLotAndKeepsItsIds() {
+        List<Pack> optimized = newOptimizer().optimize(randomLot("P"), 200, () -> true);
+        List<Pack> renamed = new ArrayList<>();
+        for (Pack pack : optimized) {
+            Pack copy = new Pack("R" + pack.getID());
+            pack.getCells().forEach(copy::addCell);
+            renamed.add(copy);
+        }
+        List<Pack> result = newOptimizer().optimize(renamed, 200, () -> true);
+        assertEquals(idsOf(renamed), idsOf(result));
+        assertTrue(StandardObjective.MAX_SPREAD.evaluate(result) <= StandardObjective.MAX_SPREAD.evaluate(renamed));
+    }
+
+    @Test
+    public void stopsWhenNoLongerRunning() {
+        long start = System.nanoTime();
+        List<Pack> result = newOptimizer().optimize(randomLot("P"), Integer.MAX_VALUE, () -> System.nanoTime() - start < 100_000_000L);
+        assertEquals(PACKS, result.size());
+        assertTrue(System.nanoTime() - start < 5_000_000_000L);
+    }
+
+    private static ShardedOptimizer newOptimizer() {
+        return new ShardedOptimizer(OptimizationMode.HIGH_CENTERED, StandardObjective.MAX_SPREAD,
+                EnumSet.of(Move.SWAP), new AnnealingSchedule(), 8, 2, new SeededRandom(99L));
+    }
+
+    private static List<Pack> randomLot(String prefix) {
+        Random random = new Random(5);
+        List<Pack> packs = new ArrayList<>();
+        for (int p = 0; p < PACKS; p++) {
+            Pack pack = new Pack(prefix + p);
+            for (int c = 0; c < CELLS_PER_PACK; c++) {
+                pack.addCell(new Cell("C" + p + "-" + c, 0.010 + random.nextDouble() * 0.005));
+            }
+            packs.add(pack);
+        }
+        return packs;
+    }
+
+    private static Set<String> ids(int count) {
+        Set<String> ids = new HashSet<>();
+        for (int i = 0; i < count; i++) {
+            ids.add(Integer.toString(i));
+        }
+        return ids;
+    }
+
+    private static Set<String> idsOf(List<Pack> packs) {
+        Set<String> ids = new HashSet<>();
+        packs.forEach((pack) -> ids.add(pack.getID()));
+        return ids;
+    }
+}
@@ -0,0 +1,94 @@
+package com.powerinnovations.batteryoptimizer.service;
+
+import com.powerinnovations.batteryoptimizer.model.Cell;
+import com.powerinnovations.batteryoptimizer.model.Pack;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for SortedPartitionSolver.
+ *
+ * @author robbi.mount
+ */
+public class SortedPartitionSolverTest {
+
+    @Test
+    public void matchesABruteForceSearchOfEveryPartition() {
+        Random random = new Random(17);
+        for (int trial = 0; trial < 200; trial++) {
+            int cellCount = 8 + random.nextInt(2); //With 9 cells one is left out.
+            List<Cell> cells = new ArrayList<>();
+            for (int i = 0; i < cellCount; i++) {
+                cells.add(new Cell("C" + i, 0.010 + random.nextInt(50) * 0.0001));
+            }
+            SortedPartitionSolver solver = new SortedPartitionSolver(cells, 2);
+            List<Pack> packs = solver.solve(4);
+
+            double best = bruteForce(cells, new boolean[cellCount], 4, 0);
+            assertEquals("Trial " + trial, best, solver.getMaxSpread(), 1e-12);
+            assertEquals(4, packs.size());
+            double high = 0;
+            Set<Cell> used = new HashSet<>();
+            for (Pack pack : packs) {
+                assertEquals(2, pack.getCellCount());
+                high = Math.max(high, pack.calculateSpreadImp());
+                used.addAll(pack.getCells());
+            }
+            assertEquals(solver.getMaxSpread(), high, 1e-12);
+            assertEquals(cellCount - 8, solver.getUnassigned().size());
+            used.addAll(solver.getUnassigned());
+            assertEquals(cellCount, used.size());
+        }
+    }
+
+    @Test
+    public void solvesAnEmptyLot() {
+        SortedPartitionSolver solver = new SortedPartitionSolver(new ArrayList<>(), 2);
+        assertTrue(solver.solve().isEmpty());
+        assertEquals(0, solver.getMaxSpread(), 0);
+    }
+
+    /**
+     * Returns the lowest possible highest pack spread of the given number of pairs built from the
+     * cells not yet used.
+     */
+    private static double bruteForce(List<Cell> cells, boolean[] used, int pairs, int from) {
+        if (pairs == 0) {
+            return 0;
+        }
+        double best = Double.MAX_VALUE;
+        for (int i = from; i < cells.size(); i++) {
+            if (used[i]) {
+                continue;
+            }
+            used[i] = true;
+            for (int j = i + 1; j < cells.size(); j++) {
+                if (used[j]) {
+                    continue;
+                }
+                used[j] = true;
+                double spread = spread(cells.get(i), cells.get(j));
+                if (spread < best) {
+                    best = Math.min(best, Math.max(spread, bruteForce(cells, used, pairs - 1, i + 1)));
+                }
+                used[j] = false;
+            }
+            used[i] = false;
+        }
+        return best;
+    }
+
+    private static double spread(Cell a, Cell b) {
+        Pack pack = new Pack("pair");
+        pack.addCell(a);
+        pack.addCell(b);
+        return pack.calculateSpreadImp();
+    }
+}
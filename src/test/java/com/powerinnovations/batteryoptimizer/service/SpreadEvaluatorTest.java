@@ -0,0 +1,67 @@
+package com.powerinnovations.batteryoptimizer.service;
+
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for SpreadEvaluator.
+ *
+ * @author robbi.mount
+ */
+public class SpreadEvaluatorTest {
+
+    private static final int PACKS = 50;
+
+    @Test
+    public void aggregatesAndSwapScoresMatchAFullRecalculation() {
+        Random random = new Random(21);
+        SpreadEvaluator evaluator = new SpreadEvaluator(PACKS);
+        double[] spreads = new double[PACKS];
+        for (int i = 0; i < 100_000; i++) {
+            int pack = random.nextInt(PACKS);
+            spreads[pack] = random.nextInt(20) / 100.0; //Few distinct values, so ties are common.
+            evaluator.setSpread(pack, spreads[pack]);
+
+            int a = random.nextInt(PACKS);
+            int b = (a + 1 + random.nextInt(PACKS - 1)) % PACKS;
+            double spreadA = random.nextDouble() * 0.2;
+            double spreadB = random.nextDouble() * 0.2;
+            double[] after = spreads.clone();
+            after[a] = spreadA;
+            after[b] = spreadB;
+            assertEquals(mean(after), evaluator.averageAfterSwap(a, spreadA, b, spreadB), 1e-12);
+            assertEquals(max(after), evaluator.highAfterSwap(a, spreadA, b, spreadB), 0);
+        }
+        assertEquals(mean(spreads), evaluator.getAverage(), 1e-12);
+        assertEquals(max(spreads), evaluator.getHigh(), 0);
+        assertEquals(max(spreads), spreads[evaluator.getHighestPack()], 0);
+        int[] order = evaluator.getSortedOrder();
+        for (int rank = 0; rank < PACKS; rank++) {
+            assertEquals(rank, evaluator.getRank(order[rank]));
+            assertEquals(spreads[order[rank]], evaluator.getSpread(order[rank]), 0);
+            if (rank > 0) {
+                assertTrue(spreads[order[rank - 1]] <= spreads[order[rank]]);
+            }
+        }
+        assertEquals(spreads[order[0]], evaluator.getLow(), 0);
+    }
+
+    private static double mean(double[] values) {
+        double sum = 0;
+        for (double value : values) {
+            sum += value;
+        }
+        return sum / values.length;
+    }
+
+    private static double max(double[] values) {
+        double max = 0;
+        for (double value : values) {
+            max = Math.max(max, value);
+        }
+        return max;
+    }
+}
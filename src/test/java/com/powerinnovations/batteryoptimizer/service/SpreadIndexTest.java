@@ -0,0 +1,67 @@
+package com.powerinnovations.batteryoptimizer.service;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for SpreadIndex.
+ *
+ * @author robbi.mount
+ */
+public class SpreadIndexTest {
+
+    @Test
+    public void ordersPacksBySpreadThenIndex() {
+        Random random = new Random(4);
+        for (int packs : new int[]{1, 2, 3, 17, 200}) {
+            SpreadIndex index = new SpreadIndex(packs);
+            double[] spreads = new double[packs];
+            for (int i = 0; i < 20_000; i++) {
+                int pack = random.nextInt(packs);
+                spreads[pack] = random.nextInt(10) / 100.0; //Few distinct values, so ties are common.
+                index.update(pack, spreads[pack]);
+                if (i % 97 == 0) {
+                    assertMatches(index, spreads);
+                }
+            }
+            assertMatches(index, spreads);
+        }
+    }
+
+    private static void assertMatches(SpreadIndex index, double[] spreads) {
+        int packs = spreads.length;
+        Integer[] boxed = new Integer[packs];
+        for (int p = 0; p < packs; p++) {
+            boxed[p] = p;
+        }
+        Arrays.sort(boxed, Comparator.<Integer>comparingDouble(p -> spreads[p]).thenComparingInt(p -> p));
+        int[] expected = new int[packs];
+        for (int rank = 0; rank < packs; rank++) {
+            expected[rank] = boxed[rank];
+            assertEquals(expected[rank], index.select(rank));
+            assertEquals(rank, index.rank(expected[rank]));
+            assertEquals(spreads[expected[rank]], index.getSpread(expected[rank]), 0);
+        }
+        assertArrayEquals(expected, index.sortedOrder(new int[packs]));
+        assertEquals(expected[packs - 1], index.getHighest());
+        assertEquals(expected[0], index.getLowest());
+
+        Random random = new Random(packs);
+        for (int i = 0; i < 10; i++) {
+            int a = random.nextInt(packs);
+            int b = random.nextInt(packs);
+            double highest = 0;
+            for (int p = 0; p < packs; p++) {
+                if (p != a && p != b) {
+                    highest = Math.max(highest, spreads[p]);
+                }
+            }
+            assertEquals(highest, index.highestExcluding(a, b), 0);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.powerinnovations.batteryoptimizer.view;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the pack ID ordering of Results.
+ *
+ * @author robbi.mount
+ */
+public class ResultsTest {
+
+    @Test
+    public void ordersNumericIdsBeforeTextIds() {
+        List<String> ids = new ArrayList<>(Arrays.asList("1a", "10", "B", "9", "A", "007", "2", "7"));
+        ids.sort(Results.ID_ORDER);
+        assertEquals(Arrays.asList("2", "007", "7", "9", "10", "1a", "A", "B"), ids);
+    }
+
+    @Test
+    public void orderIsTransitiveForMixedIds() {
+        List<String> ids = new ArrayList<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 2000; i++) {
+            switch (random.nextInt(4)) {
+                case 0:
+                    ids.add(Integer.toString(random.nextInt(1000)));
+                    break;
+                case 1:
+                    ids.add(random.nextInt(100) + "a");
+                    break;
+                case 2:
+                    ids.add("0" + random.nextInt(100));
+                    break;
+                default:
+                    ids.add(Long.toString(Long.MAX_VALUE) + random.nextInt(10));
+            }
+        }
+        Collections.shuffle(ids, random);
+        ids.sort(Results.ID_ORDER); //TimSort throws if the order is inconsistent.
+        for (int i = 1; i < ids.size(); i++) {
+            assertTrue(ids.get(i - 1) + " > " + ids.get(i), Results.ID_ORDER.compare(ids.get(i - 1), ids.get(i)) <= 0);
+        }
+        for (String a : ids.subList(0, 50)) {
+            for (String b : ids.subList(0, 50)) {
+                assertEquals(Integer.signum(Results.ID_ORDER.compare(a, b)), -Integer.signum(Results.ID_ORDER.compare(b, a)));
+            }
+        }
+    }
+}